@@ -1,8 +1,10 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useParams, useNavigate, Link } from 'react-router-dom';
 import SockJS from 'sockjs-client';
 import { over } from 'stompjs';
 import { Client } from '@stomp/stompjs';
+import { createOtClient, diffOperation, applyOperation } from './otClient';
+import { COMPACT_CONTENT_TYPE, encodeOp, decodeBatch } from './compactOps';
 
 /* ─────────────────────────── Helpers ─────────────────────────── */
 
@@ -83,6 +85,11 @@ export default function DynamicCodeEditorPage() {
   const [stompClient, setStompClient] = useState(null);
   const [editNotification, setEditNotification] = useState(null);
   const [userNames, setUserNames] = useState({});
+  const [editors, setEditors] = useState([]);
+
+  // live editing: the text the OT client last saw, and the OT client itself
+  const codeRef = useRef('');
+  const otRef   = useRef(null);
 
   
   /* ------------- auth / role ------------- */
@@ -154,7 +161,7 @@ export default function DynamicCodeEditorPage() {
     });
     if (!meta) {
       setFilename('untitled.txt');
-      setCode('');
+      setLiveCode('');
       setSnapshots([]);
       return;
     }
@@ -163,8 +170,9 @@ export default function DynamicCodeEditorPage() {
 
     fetch(`/api/code/latest?fileId=${fileId}`, { credentials: 'include' })
       .then(r => r.ok ? r.json() : null)
-      .then(data => setCode(data ? data.content : ''))
-      .catch(() => setCode(''));
+      // the live document, once joined, is newer than the latest snapshot
+      .then(data => { if (!otRef.current) setLiveCode(data ? data.content : ''); })
+      .catch(() => { if (!otRef.current) setLiveCode(''); });
 
     fetch(`/api/code/snapshots?fileId=${fileId}`, { credentials: 'include' })
       .then(r => r.ok ? r.json() : [])
@@ -177,60 +185,150 @@ export default function DynamicCodeEditorPage() {
 
 
   /* ------------- websocket connection ------------- */
+  function setLiveCode(text) {
+    codeRef.current = text;
+    setCode(text);
+  }
+
+  async function showEditing(userId) {
+    let username = userNames[userId];
+
+    if (!username) {
+      try {
+        const res = await fetch(`/api/users/${userId}`, { credentials: 'include' });
+        const userData = await res.json();
+        username = userData.username;
+        setUserNames(prev => ({ ...prev, [userId]: username }));
+      } catch {
+        username = userId;
+      }
+    }
+
+    setEditNotification({ username, message: `${username} is editing this file...` });
+    setTimeout(() => setEditNotification(null), 3000);
+  }
+
   function connectWebSocket() {
-    const socket = new SockJS('/ws');
+    // fileId lets the proxy keep all editors of a file on one server node
+    const socket = new SockJS(`/ws?fileId=${encodeURIComponent(fileId)}`);
     const stomp = over(socket);
     stomp.connect({}, () => {
-      stomp.subscribe(`/topic/edit/${fileId}`, async (msg) => {
-        const data = JSON.parse(msg.body);
-  
-        if (data.type === 'EDIT' && data.userId !== user?.id) {
+      const ot = createOtClient(
+        (revision, ops, opId) => stomp.send("/app/edit", { 'content-type': COMPACT_CONTENT_TYPE }, encodeOp({
+          fileId,
+          userId: user?.id,
+          revision,
+          ops,
+          opId
+        })),
+        op => setLiveCode(applyOperation(codeRef.current, op))
+      );
+
+      // joins the file, also after a RESYNC as the session's presence may
+      // have expired, then takes the live document and its revision, replied
+      // once by the server
+      const join = () => {
+        stomp.send("/app/edit", {}, JSON.stringify({
+          type: 'SUBSCRIBE',
+          fileId,
+          userId: user?.id
+        }));
+        const sub = stomp.subscribe(`/app/doc/${fileId}`, (msg) => {
+          const state = JSON.parse(msg.body);
+          ot.reset(state.revision);
+          setLiveCode(state.content || '');
+          otRef.current = ot;
+          sub.unsubscribe();
+        });
+      };
+
+      const handle = async (data) => {
+        if (data.type === 'OPS') {
+          // accepted edits arrive batched, oldest first
+          data.edits.forEach(handle);
+          return;
+        }
 
-          let username = userNames[data.userId];
-  
-          if (!username) {
-            try {
-              const res = await fetch(`/api/users/${data.userId}`, { credentials: 'include' });
-              const userData = await res.json();
-              username = userData.username;
-              setUserNames(prev => ({ ...prev, [data.userId]: username }));
-            } catch {
-              username = data.userId;
-            }
-          }
-  
-          setEditNotification({ username, message: `${username} is editing this file...` });
-          setTimeout(() => setEditNotification(null), 3000);
+        if (data.type === 'OP' && otRef.current) {
+          const own = otRef.current.isOwn(data.opId);
+          otRef.current.applyServer(data);
+          if (!own && data.userId !== user?.id) showEditing(data.userId);
+        }
+
+        if (data.type === 'RESYNC' && otRef.current && otRef.current.isOwn(data.opId)) {
+          otRef.current = null;
+          join();
+        }
+
+        if (data.type === 'PRESENCE') {
+          setEditors(prev => [
+            ...prev.filter(id => !data.left.includes(id) && !data.joined.includes(id)),
+            ...data.joined
+          ]);
+        }
+
+        if (data.type === 'EDIT' && data.userId !== user?.id) {
+          showEditing(data.userId);
         }
   
         if (data.type === 'REFRESH' && data.userId !== user?.id) {
-          // Someone else saved or ran code — refetch latest
+          // Someone else saved or ran code — refetch snapshots; the text is
+          // already current through OP messages unless live editing is off
           const [newSnaps, latest] = await Promise.all([
             fetch(`/api/code/snapshots?fileId=${fileId}`, { credentials: 'include' })
               .then(r => r.ok ? r.json() : []),
-            fetch(`/api/code/latest?fileId=${fileId}`, { credentials: 'include' })
-              .then(r => r.ok ? r.json() : { content: '' })
+            otRef.current
+              ? Promise.resolve(null)
+              : fetch(`/api/code/latest?fileId=${fileId}`, { credentials: 'include' })
+                  .then(r => r.ok ? r.json() : { content: '' })
           ]);
           setSnapshots(newSnaps);
-          setCode(latest.content || '');
+          if (latest) setLiveCode(latest.content || '');
           setOutput('// Refreshed after update from another user');
         }
-      });
-  
-      // Send SUBSCRIBE message on connect
-      stomp.send("/app/edit", {}, JSON.stringify({
-        type: 'SUBSCRIBE',
-        fileId,
-        userId: user?.id
-      }));
+      };
+
+      // accepted edits in the compact format, everything else as JSON
+      stomp.subscribe(`/topic/ops/${fileId}/compact`, msg => handle(decodeBatch(msg.body)));
+      stomp.subscribe(`/topic/edit/${fileId}`, msg => handle(JSON.parse(msg.body)));
+
+      join();
+      // the full set once, PRESENCE diffs from then on
+      fetch(`/api/presence/${fileId}`, { credentials: 'include' })
+        .then(r => r.ok ? r.json() : { users: [] })
+        .then(p => setEditors(prev => [...new Set([...p.users, ...prev])]))
+        .catch(console.error);
     });
     setStompClient(stomp);
+    return stomp;
   }
   
   
-  // Connect on user+fileId ready
+  // Connect on user+fileId ready; LEAVE lets the server drop the live
+  // document once its last editor is gone
   useEffect(() => {
-    if (user && fileId) connectWebSocket();
+    if (!user || !fileId) return;
+    const stomp = connectWebSocket();
+    const leave = () => {
+      if (stomp.connected) {
+        stomp.send("/app/edit", {}, JSON.stringify({ type: 'LEAVE', fileId, userId: user.id }));
+      }
+    };
+    // keeps this session's presence from expiring while the file is open
+    const heartbeat = setInterval(() => {
+      if (stomp.connected) {
+        stomp.send("/app/edit", {}, JSON.stringify({ type: 'HEARTBEAT', fileId, userId: user.id }));
+      }
+    }, 15000);
+    window.addEventListener('beforeunload', leave);
+    return () => {
+      clearInterval(heartbeat);
+      setEditors([]);
+      window.removeEventListener('beforeunload', leave);
+      leave();
+      otRef.current = null;
+      if (stomp.connected) stomp.disconnect();
+    };
   }, [user, fileId]);
   
 
@@ -256,7 +354,7 @@ export default function DynamicCodeEditorPage() {
       const snapshotCode = await res.text();
   
       // Save reverted snapshot
-      const saveRes = await fetch('/api/code', {
+      const saveRes = await fetch(`/api/code?fileId=${encodeURIComponent(fileId ?? '')}`, {
         method: 'POST',
         credentials: 'include',
         headers: { 'Content-Type': 'application/json' },
@@ -277,7 +375,7 @@ export default function DynamicCodeEditorPage() {
       ]);
   
       setSnapshots(newSnaps);
-      setCode(latest.content || '');
+      replaceText(latest.content || '');
   
       //  Notify others to refresh
       if (stompClient && stompClient.connected) {
@@ -338,7 +436,8 @@ export default function DynamicCodeEditorPage() {
 
   /* ------------- helpers ------------- */
   async function saveSnapshot(summaryText) {
-    const res = await fetch('/api/code', {
+    // fileId lets the proxy send the save to the node holding the file
+    const res = await fetch(`/api/code?fileId=${encodeURIComponent(fileId ?? '')}`, {
       method: 'POST',
       credentials: 'include',
       headers: { 'Content-Type': 'application/json' },
@@ -395,6 +494,28 @@ export default function DynamicCodeEditorPage() {
                              .then(r => r.ok ? r.json() : []);
         setSnapshots(snaps);
   
+        if (stompClient && stompClient.connected) {
+          // output arrives on /topic/run/{runId} as the program writes it;
+          // subscribing before the request means none of it is missed
+          const runId = crypto.randomUUID();
+          setOutput('');
+          const sub = stompClient.subscribe(`/topic/run/${runId}`, msg => {
+            const event = JSON.parse(msg.body);
+            if (event.type === 'OUTPUT') {
+              setOutput(prev => prev + event.text);
+              // the server sends only a few frames ahead of these credits
+              stompClient.send("/app/execute/credit", {}, JSON.stringify({ runId, frames: 1 }));
+            } else {
+              setOutput(prev => prev + (event.type === 'EXIT'
+                ? `\n// exited with status ${event.exitCode}`
+                : `\n${event.message}`));
+              sub.unsubscribe();
+            }
+          });
+          stompClient.send("/app/execute", {}, JSON.stringify({ runId, fileId: fid, snapshotName }));
+          return;
+        }
+
         const r = await fetch(
           `/api/execute?fileId=${fid}&snapshotName=${encodeURIComponent(snapshotName)}`,
           { method: 'POST', credentials: 'include' }
@@ -441,20 +562,16 @@ export default function DynamicCodeEditorPage() {
         }
       }
 
-      function handleEditInput(e) {
-        const newText = e.target.value;
-        setCode(newText);
-        if (stompClient && stompClient.connected) {
-          stompClient.send("/app/edit", {}, JSON.stringify({
-            type: 'EDIT',
-            fileId,
-            userId: user?.id,
-            isSender: true,
-            timestamp: new Date().toISOString(),
-            text: newText
-          }));
+      // sends the change from the last known text as one small operation
+      function replaceText(newText) {
+        if (otRef.current) {
+          otRef.current.applyClient(diffOperation(codeRef.current, newText));
         }
+        setLiveCode(newText);
+      }
 
+      function handleEditInput(e) {
+        replaceText(e.target.value);
       }
 
   const [project, setProject] = useState(null);
@@ -482,6 +599,9 @@ export default function DynamicCodeEditorPage() {
           <div style={{ display: 'flex', justifyContent: 'space-between', padding: '10px 20px', borderBottom: '1px solid #ccc' }}>
       <div>
         <h2 style={{ margin: 0 }}>{project?.name || "Project"}</h2>
+        {editors.length > 1 && (
+          <span style={{ fontSize: 13, color: '#555' }}>{editors.length} people editing this file</span>
+        )}
       </div>
       {editNotification && editNotification.username !== user?.username && (
         <div style={{ background: '#fffae6', padding: 5, marginBottom: 10, color: '#333', borderRadius: 4 }}>
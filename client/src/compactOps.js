@@ -0,0 +1,91 @@
+/*
+ * Compact wire format for OT traffic (content type text/x-collab-op), the
+ * client half of the server's CompactOpCodec. Fields are tab separated,
+ * numbers are base 36 and an operation is a run of components:
+ * R<n> retains n, D<n> deletes n and I<len>:<text> inserts text.
+ * Lengths count UTF-16 code units, as String.length does on both sides.
+ */
+
+export const COMPACT_CONTENT_TYPE = 'text/x-collab-op';
+
+function encodeOps(ops) {
+  let out = '';
+  for (const c of ops) {
+    if (typeof c === 'string') out += 'I' + c.length.toString(36) + ':' + c;
+    else out += (c > 0 ? 'R' : 'D') + Math.abs(c).toString(36);
+  }
+  return out;
+}
+
+/** Encodes an OP message: OP, fileId, userId, opId, revision, ops. */
+export function encodeOp({ fileId, userId, opId, revision, ops }) {
+  return ['OP', fileId, userId, opId, revision.toString(36), encodeOps(ops)].join('\t');
+}
+
+function reader(s) {
+  let pos = 0;
+  const fail = what => { throw new Error(`compact frame: ${what} at ${pos}`); };
+  const r = {
+    field() {
+      let end = pos;
+      while (end < s.length && s[end] !== '\t' && s[end] !== '\n') end++;
+      const field = s.slice(pos, end);
+      pos = s[end] === '\t' ? end + 1 : end;
+      return field;
+    },
+    number() {
+      const start = pos;
+      while (pos < s.length && /[0-9a-z]/.test(s[pos])) pos++;
+      if (start === pos) fail('number expected');
+      return parseInt(s.slice(start, pos), 36);
+    },
+    text() {
+      const colon = s.indexOf(':', pos);
+      if (colon < 0) fail('length expected');
+      const end = colon + 1 + parseInt(s.slice(pos, colon), 36);
+      if (end > s.length) fail('text runs past the frame');
+      const text = s.slice(colon + 1, end);
+      pos = end;
+      return text;
+    },
+    ops() {
+      const ops = [];
+      while (pos < s.length && s[pos] !== '\n') {
+        const tag = s[pos++];
+        if (tag === 'R') ops.push(r.number());
+        else if (tag === 'D') ops.push(-r.number());
+        else if (tag === 'I') ops.push(r.text());
+        else fail(`bad component '${tag}'`);
+      }
+      return ops;
+    },
+    expect(c) {
+      if (s[pos] !== c) fail(`'${c}' expected`);
+      pos++;
+    }
+  };
+  return r;
+}
+
+/** Decodes an OPS batch into the same messages the JSON batch carries. */
+export function decodeBatch(frame) {
+  const r = reader(frame);
+  if (r.field() !== 'OPS') throw new Error('compact frame: not an OPS frame');
+  const fileId = r.field();
+  const count = r.number();
+  const edits = [];
+  for (let i = 0; i < count; i++) {
+    r.expect('\n');
+    const type = r.field();
+    const userId = r.field();
+    const opId = r.field();
+    if (type === 'OP') {
+      const revision = r.number();
+      r.expect('\t');
+      edits.push({ type, fileId, userId, opId, revision, ops: r.ops() });
+    } else {
+      edits.push({ type, fileId, userId, opId, text: r.text() });
+    }
+  }
+  return { type: 'OPS', fileId, edits };
+}
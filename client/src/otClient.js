@@ -0,0 +1,197 @@
+/*
+ * Client side of the server's operational-transform engine.
+ *
+ * An operation is an array of components, as in ot.js: a positive number
+ * retains that many characters, a negative number deletes that many and a
+ * string inserts itself. The server orders operations by revision; this
+ * client keeps at most one operation in flight and buffers (composes) local
+ * edits made while waiting for its acknowledgement.
+ */
+
+/* ─────────────────────────── operations ─────────────────────────── */
+
+function length(c) {
+  return typeof c === 'string' ? c.length : Math.abs(c);
+}
+
+function push(op, c) {
+  if (c === 0 || c === '') return op;
+  const last = op[op.length - 1];
+  if (typeof c === 'string') {
+    if (typeof last === 'string') op[op.length - 1] = last + c;
+    else if (last < 0) {
+      // keep inserts before deletes, as the server does
+      const prev = op[op.length - 2];
+      if (typeof prev === 'string') op[op.length - 2] = prev + c;
+      else op.splice(op.length - 1, 0, c);
+    } else op.push(c);
+  } else if (typeof last === 'number' && Math.sign(last) === Math.sign(c)) {
+    op[op.length - 1] = last + c;
+  } else {
+    op.push(c);
+  }
+  return op;
+}
+
+/** Walks an operation, consuming retains, deletes and inserts in parts. */
+function cursor(op) {
+  let i = 0;
+  let offset = 0;
+  return {
+    hasNext: () => i < op.length,
+    peek: () => op[i],
+    remaining: () => length(op[i]) - offset,
+    take(n) {
+      const c = op[i];
+      const part = typeof c === 'string'
+        ? c.slice(offset, offset + n)
+        : Math.sign(c) * n;
+      offset += n;
+      if (offset === length(c)) { i++; offset = 0; }
+      return part;
+    },
+  };
+}
+
+const isInsert = c => typeof c === 'string';
+const isRetain = c => typeof c === 'number' && c > 0;
+const isDelete = c => typeof c === 'number' && c < 0;
+
+/** The smallest single-range operation turning oldText into newText. */
+export function diffOperation(oldText, newText) {
+  let start = 0;
+  const max = Math.min(oldText.length, newText.length);
+  while (start < max && oldText[start] === newText[start]) start++;
+  let end = 0;
+  while (end < max - start
+         && oldText[oldText.length - 1 - end] === newText[newText.length - 1 - end]) end++;
+
+  const op = [];
+  push(op, start);
+  push(op, newText.slice(start, newText.length - end));
+  push(op, -(oldText.length - start - end));
+  push(op, end);
+  return op;
+}
+
+export function applyOperation(text, op) {
+  let out = '';
+  let pos = 0;
+  for (const c of op) {
+    if (isRetain(c)) { out += text.slice(pos, pos + c); pos += c; }
+    else if (isInsert(c)) out += c;
+    else pos -= c;
+  }
+  return out;
+}
+
+/** a' and b' such that applying a then b' equals applying b then a'. */
+export function transform(a, b) {
+  const aPrime = [];
+  const bPrime = [];
+  const ca = cursor(a);
+  const cb = cursor(b);
+  while (ca.hasNext() || cb.hasNext()) {
+    if (ca.hasNext() && isInsert(ca.peek())) {
+      const text = ca.take(ca.remaining());
+      push(aPrime, text);
+      push(bPrime, text.length);
+      continue;
+    }
+    if (cb.hasNext() && isInsert(cb.peek())) {
+      const text = cb.take(cb.remaining());
+      push(aPrime, text.length);
+      push(bPrime, text);
+      continue;
+    }
+    if (!ca.hasNext() || !cb.hasNext()) throw new Error('operations do not cover the same text');
+    const n = Math.min(ca.remaining(), cb.remaining());
+    const x = ca.take(n);
+    const y = cb.take(n);
+    if (x > 0 && y > 0) { push(aPrime, n); push(bPrime, n); }
+    else if (x < 0 && y > 0) push(aPrime, -n);
+    else if (x > 0 && y < 0) push(bPrime, -n);
+  }
+  return [aPrime, bPrime];
+}
+
+/** One operation with the effect of a followed by b. */
+export function compose(a, b) {
+  const out = [];
+  const ca = cursor(a);
+  const cb = cursor(b);
+  while (ca.hasNext() || cb.hasNext()) {
+    if (ca.hasNext() && isDelete(ca.peek())) { push(out, ca.take(ca.remaining())); continue; }
+    if (cb.hasNext() && isInsert(cb.peek())) { push(out, cb.take(cb.remaining())); continue; }
+    if (!ca.hasNext() || !cb.hasNext()) throw new Error('operations do not line up');
+    const n = Math.min(ca.remaining(), cb.remaining());
+    const x = ca.take(n);
+    const y = cb.take(n);
+    if (isRetain(x)) push(out, y);          // retain or delete from b
+    else if (isRetain(y)) push(out, x);     // insert from a kept by b
+    // an insert from a deleted by b cancels out
+  }
+  return out;
+}
+
+/* ─────────────────────────── client ─────────────────────────── */
+
+/**
+ * @param send    (revision, op, opId) => void, publishes an OP message
+ * @param onApply (op) => void, applies a remote operation to the local text
+ */
+export function createOtClient(send, onApply) {
+  let revision = 0;
+  let outstanding = null;   // { op, opId } sent, not yet acknowledged
+  let buffer = null;        // local edits made while waiting, composed
+  // opIds only have to be unique among the clients editing one file
+  const clientId = Math.random().toString(36).slice(2, 10);
+  let counter = 0;
+
+  function flush() {
+    const opId = `${clientId}-${(counter++).toString(36)}`;
+    outstanding = { op: buffer, opId };
+    buffer = null;
+    send(revision, outstanding.op, opId);
+  }
+
+  return {
+    /** Starts over from a document state received from the server. */
+    reset(rev) {
+      revision = rev;
+      outstanding = null;
+      buffer = null;
+    },
+
+    /** A local edit. */
+    applyClient(op) {
+      if (op.length === 0 || (op.length === 1 && isRetain(op[0]))) return;
+      buffer = buffer ? compose(buffer, op) : op;
+      if (!outstanding) flush();
+    },
+
+    /** An OP broadcast by the server, our own (acknowledgement) or someone else's. */
+    applyServer(message) {
+      // already part of the state we (re)joined from
+      if (message.revision <= revision) return;
+      revision = message.revision;
+      if (outstanding && message.opId === outstanding.opId) {
+        outstanding = null;
+        if (buffer) flush();
+        return;
+      }
+      let op = message.ops;
+      if (outstanding) {
+        [outstanding.op, op] = transform(outstanding.op, op);
+      }
+      if (buffer) {
+        [buffer, op] = transform(buffer, op);
+      }
+      onApply(op);
+    },
+
+    isOwn(opId) {
+      return outstanding !== null && outstanding.opId === opId;
+    },
+  };
+}
@@ -1,31 +1,66 @@
 package com.collabcode.executor_c;
 
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class CExecutorService {
+
+    private static final List<String> FLAGS = List.of();
+
+    private final ExecutionScheduler scheduler;
+    private final CompileCache cache;
+
+    public CExecutorService(ExecutionScheduler scheduler, CompileCache cache) {
+        this.scheduler = scheduler;
+        this.cache = cache;
+    }
+
     public String execute(String code) throws IOException, InterruptedException {
-        Path tempDir = Files.createTempDirectory("c-code");
-        File source = new File(tempDir.toFile(), "main.c");
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
 
-        try (FileWriter writer = new FileWriter(source)) {
-            writer.write(code);
-        }
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
+
+    /* ---------- internals ---------- */
+
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
+        Path tempDir = Files.createTempDirectory("c-code");
+        Path binary = tempDir.resolve("a.out");
+        String key = cache.key("gcc", FLAGS, code);
 
-        Process compile = new ProcessBuilder("gcc", source.getAbsolutePath(), "-o", tempDir + "/a.out")
-                .redirectErrorStream(true).start();
-        compile.waitFor();
+        // unchanged code runs the binary compiled last time
+        if (!cache.get(key, binary)) {
+            File source = new File(tempDir.toFile(), "main.c");
+            try (FileWriter writer = new FileWriter(source)) {
+                writer.write(code);
+            }
 
-        if (compile.exitValue() != 0) {
-            return new String(compile.getInputStream().readAllBytes());
+            long start = System.nanoTime();
+            List<String> command = new ArrayList<>(List.of("gcc"));
+            command.addAll(FLAGS);
+            command.addAll(List.of(source.getAbsolutePath(), "-o", binary.toString()));
+            ExecutionScheduler.Output compile = scheduler.exec(command, tempDir);
+            if (compile.exitCode() != 0) {
+                sink.write(compile.text());
+                return compile.exitCode();
+            }
+            cache.put(key, binary, (System.nanoTime() - start) / 1_000_000);
         }
 
-        Process run = new ProcessBuilder(tempDir + "/a.out").redirectErrorStream(true).start();
-        String output = new String(run.getInputStream().readAllBytes());
-        run.waitFor();
-        return output;
+        return scheduler.exec(List.of(binary.toString()), tempDir, sink);
     }
-}
\ No newline at end of file
+}
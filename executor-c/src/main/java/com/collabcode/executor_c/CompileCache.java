@@ -0,0 +1,209 @@
+package com.collabcode.executor_c;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compiled artifacts on disk, keyed by a hash of the source, the compiler's
+ * version and the flags, so running unchanged code again skips the compiler.
+ * Least recently used artifacts are deleted once the cache holds more than
+ * {@code compile-cache.max-bytes}.
+ *
+ * An artifact is stored as {@code <key>_<compile millis>}, which lets the
+ * cache report the compile time each hit saved, across restarts too.
+ */
+@Component
+public class CompileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompileCache.class);
+
+    private final Path dir;
+    private final long maxBytes;
+    /** Artifacts in access order, least recent first; guarded by itself. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer saved;
+
+    public CompileCache(MeterRegistry registry,
+                        @Value("${compile-cache.dir:${java.io.tmpdir}/compile-cache}") Path dir,
+                        @Value("${compile-cache.max-bytes:268435456}") long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        this.hits   = Counter.builder("compile.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("compile.cache.requests").tag("result", "miss").register(registry);
+        this.saved  = Timer.builder("compile.cache.saved").register(registry);
+        Gauge.builder("compile.cache.hit.ratio", this, CompileCache::hitRatio).register(registry);
+        Gauge.builder("compile.cache.bytes", this, CompileCache::bytes).register(registry);
+        load();
+    }
+
+    private record Entry(Path file, long size, long compileMillis) { }
+
+    /** The key of a source compiled by the given compiler command with the given flags. */
+    public String key(String compiler, List<String> flags, String source) {
+        return sha256(version(compiler) + "\0" + String.join(" ", flags) + "\0" + source);
+    }
+
+    /** Copies the artifact stored under key to target, if there is one. */
+    public boolean get(String key, Path target) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            try {
+                copy(entry.file(), target);
+                // recency survives restarts through the modification time
+                Files.setLastModifiedTime(entry.file(), FileTime.fromMillis(System.currentTimeMillis()));
+                hits.increment();
+                saved.record(entry.compileMillis(), TimeUnit.MILLISECONDS);
+                return true;
+            } catch (IOException e) {
+                // evicted meanwhile
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /** Stores a copy of a freshly compiled artifact. */
+    public void put(String key, Path artifact, long compileMillis) {
+        Path file = dir.resolve(key + "_" + compileMillis);
+        try {
+            Path staged = Files.createTempFile(dir, key, ".tmp");
+            Files.copy(artifact, staged, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(staged, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            add(key, new Entry(file, Files.size(file), compileMillis));
+        } catch (IOException e) {
+            logger.warn("Could not cache compiled artifact {}", key, e);
+        }
+    }
+
+    public double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    public long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /* ---------- internals ---------- */
+
+    private void add(String key, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size();
+                if (!previous.file().equals(entry.file())) delete(previous.file());
+            }
+            bytes += entry.size();
+            Iterator<Entry> lru = entries.values().iterator();
+            while (bytes > maxBytes && lru.hasNext()) {
+                Entry oldest = lru.next();
+                if (oldest == entry) break;
+                lru.remove();
+                bytes -= oldest.size();
+                delete(oldest.file());
+            }
+        }
+    }
+
+    /** Picks up what earlier runs left in the directory, oldest first. */
+    private void load() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.sorted(Comparator.comparingLong(CompileCache::lastModified)).forEach(file -> {
+                String name = file.getFileName().toString();
+                int sep = name.lastIndexOf('_');
+                if (name.endsWith(".tmp") || sep < 0) {
+                    delete(file);
+                    return;
+                }
+                try {
+                    add(name.substring(0, sep), new Entry(file, Files.size(file), Long.parseLong(name.substring(sep + 1))));
+                } catch (IOException | NumberFormatException e) {
+                    delete(file);
+                }
+            });
+        }
+    }
+
+    private String version(String compiler) {
+        return versions.computeIfAbsent(compiler, c -> {
+            try {
+                Process process = new ProcessBuilder(c, "--version").redirectErrorStream(true).start();
+                String out = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                process.waitFor();
+                return out.lines().findFirst().orElse(c);
+            } catch (IOException e) {
+                return c;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return c;
+            }
+        });
+    }
+
+    /**
+     * Gives a run its own copy: the program runs in target's directory and
+     * could rewrite a linked artifact, and with it every later hit.
+     */
+    private static void copy(Path file, Path target) throws IOException {
+        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete cached artifact {}", file, e);
+        }
+    }
+
+    private static String sha256(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
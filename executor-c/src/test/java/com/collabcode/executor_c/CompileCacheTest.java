@@ -0,0 +1,89 @@
+package com.collabcode.executor_c;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileCacheTest {
+
+	@TempDir
+	Path dir;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void keyDependsOnSourceCompilerAndFlags() throws Exception {
+		CompileCache cache = new CompileCache(registry, dir.resolve("cache"), 1_000);
+
+		String key = cache.key("sh", List.of(), "int main() {}");
+		assertEquals(key, cache.key("sh", List.of(), "int main() {}"));
+		assertNotEquals(key, cache.key("sh", List.of(), "int main() { }"));
+		assertNotEquals(key, cache.key("sh", List.of("-O2"), "int main() {}"));
+		assertNotEquals(key, cache.key("ls", List.of(), "int main() {}"));
+	}
+
+	@Test
+	void hitsCopyTheArtifactAndReportTheTimeSaved() throws Exception {
+		CompileCache cache = new CompileCache(registry, dir.resolve("cache"), 1_000);
+		Path binary = artifact("a", 100);
+
+		assertFalse(cache.get("k1", dir.resolve("out1")));
+		cache.put("k1", binary, 250);
+		assertTrue(cache.get("k1", dir.resolve("out2")));
+		assertTrue(cache.get("k1", dir.resolve("out2")));
+
+		assertArrayEquals(Files.readAllBytes(binary), Files.readAllBytes(dir.resolve("out2")));
+		assertEquals(2.0 / 3, cache.hitRatio(), 1e-9);
+		assertEquals(500, registry.get("compile.cache.saved").timer().totalTime(TimeUnit.MILLISECONDS), 1e-9);
+	}
+
+	@Test
+	void aRunRewritingItsBinaryLeavesTheCacheIntact() throws Exception {
+		CompileCache cache = new CompileCache(registry, dir.resolve("cache"), 1_000);
+		Path binary = artifact("a", 100);
+		cache.put("k1", binary, 10);
+
+		assertTrue(cache.get("k1", dir.resolve("run1")));
+		Files.writeString(dir.resolve("run1"), "POISONED");
+		assertTrue(cache.get("k1", dir.resolve("run2")));
+
+		assertArrayEquals(Files.readAllBytes(binary), Files.readAllBytes(dir.resolve("run2")));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedBeyondMaxBytes() throws Exception {
+		CompileCache cache = new CompileCache(registry, dir.resolve("cache"), 250);
+		cache.put("k1", artifact("a", 100), 10);
+		cache.put("k2", artifact("b", 100), 10);
+		assertTrue(cache.get("k1", dir.resolve("out")));      // k2 is now the oldest
+		cache.put("k3", artifact("c", 100), 10);
+
+		assertEquals(200, cache.bytes());
+		assertTrue(cache.get("k1", dir.resolve("out")));
+		assertFalse(cache.get("k2", dir.resolve("out")));
+		assertTrue(cache.get("k3", dir.resolve("out")));
+	}
+
+	@Test
+	void survivesRestarts() throws Exception {
+		CompileCache first = new CompileCache(registry, dir.resolve("cache"), 1_000);
+		first.put("k1", artifact("a", 100), 420);
+
+		CompileCache second = new CompileCache(new SimpleMeterRegistry(), dir.resolve("cache"), 1_000);
+		assertEquals(100, second.bytes());
+		assertTrue(second.get("k1", dir.resolve("out")));
+	}
+
+	private Path artifact(String name, int size) throws Exception {
+		Path file = dir.resolve(name);
+		Files.write(file, new byte[size]);
+		return file;
+	}
+}
@@ -0,0 +1,9 @@
+package com.collabcode.executor_common;
+
+/** Thrown when a run arrives while the execution queue is full; answered with 429. */
+public class ExecutionRejectedException extends RuntimeException {
+
+    public ExecutionRejectedException(int queued) {
+        super("Too many runs waiting (" + queued + " queued), try again shortly");
+    }
+}
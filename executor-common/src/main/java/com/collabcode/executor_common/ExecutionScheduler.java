@@ -0,0 +1,260 @@
+package com.collabcode.executor_common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs executions on a bounded pool: {@code execution.workers} at a time,
+ * up to {@code execution.queue-depth} more waiting in FIFO order, and an
+ * {@link ExecutionRejectedException} (429) beyond that.
+ *
+ * Processes started through {@link #exec} are killed with their children
+ * after {@code execution.timeout-ms} of wall-clock time or
+ * {@code execution.cpu-seconds} of CPU time, and keep only the first
+ * {@code execution.max-output-bytes} of their output. Executors that run
+ * programs some other way, as the Java one does on its worker JVMs, only
+ * queue their runs here and apply their own limits.
+ *
+ * Shared by every executor, which imports it into its application context.
+ */
+@Component
+public class ExecutionScheduler {
+
+    /** Exit status of a process killed by SIGXCPU, the soft CPU limit. */
+    private static final int CPU_LIMIT_EXIT = 128 + 24;
+
+    private final ThreadPoolExecutor pool;
+    private final ScheduledExecutorService reaper;
+    private final long timeoutMillis;
+    private final int cpuSeconds;
+    private final int maxOutputBytes;
+
+    private final Timer queueWait;
+    private final Timer runTime;
+    private final Counter rejected;
+    private final Counter timeouts;
+
+    public ExecutionScheduler(MeterRegistry registry,
+                              @Value("${execution.workers:0}") int workers,
+                              @Value("${execution.queue-depth:32}") int queueDepth,
+                              @Value("${execution.timeout-ms:10000}") long timeoutMillis,
+                              @Value("${execution.cpu-seconds:5}") int cpuSeconds,
+                              @Value("${execution.max-output-bytes:1048576}") int maxOutputBytes) {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueDepth), r -> {
+                    Thread t = new Thread(r, "execution-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "execution-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timeoutMillis  = timeoutMillis;
+        this.cpuSeconds     = cpuSeconds;
+        this.maxOutputBytes = maxOutputBytes;
+
+        Gauge.builder("execution.queue.depth", pool, p -> p.getQueue().size()).register(registry);
+        Gauge.builder("execution.active", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+        this.queueWait = Timer.builder("execution.queue.wait").publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.runTime   = Timer.builder("execution.run").publishPercentiles(0.5, 0.95, 0.99).register(registry);
+        this.rejected  = Counter.builder("execution.rejected").register(registry);
+        this.timeouts  = Counter.builder("execution.timeouts").register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+        reaper.shutdownNow();
+    }
+
+    /** A finished process: its exit status and combined stdout and stderr. */
+    public record Output(int exitCode, String text) { }
+
+    /** Takes a process's output as it is written; throws when the reader has gone away. */
+    public interface Sink {
+        void write(String chunk) throws IOException;
+    }
+
+    /** A job run on the pool, which may throw what an execution throws. */
+    public interface Job<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Queues a job and waits for its result.
+     *
+     * @throws ExecutionRejectedException when the queue is full
+     */
+    public <T> T submit(Job<T> job) throws IOException, InterruptedException {
+        Future<T> future = pool(job);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException ie) throw ie;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Queues a job without waiting for it.
+     *
+     * @throws ExecutionRejectedException when the queue is full
+     */
+    public <T> CompletableFuture<T> start(Job<T> job) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pool(() -> {
+            try {
+                result.complete(job.call());
+            } catch (Exception | Error e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /** Runs a command in dir under the time and output limits. */
+    public Output exec(List<String> command, Path dir) throws IOException, InterruptedException {
+        StringBuilder text = new StringBuilder();
+        int exitCode = exec(command, dir, text::append);
+        return new Output(exitCode, text.toString());
+    }
+
+    /**
+     * Runs a command in dir under the time and output limits, passing its
+     * output to sink as it comes, and returns its exit status. The process
+     * writes no faster than sink takes its output.
+     */
+    public int exec(List<String> command, Path dir, Sink sink) throws IOException, InterruptedException {
+        // the soft limit sends SIGXCPU, the hard one a second later SIGKILL; sh then execs the command in its place
+        String limits = "ulimit -S -t " + cpuSeconds + " && ulimit -H -t " + (cpuSeconds + 1) + " && exec \"$@\"";
+        List<String> limited = new ArrayList<>(List.of("sh", "-c", limits, "sh"));
+        limited.addAll(command);
+        Process process = new ProcessBuilder(limited).directory(dir.toFile()).redirectErrorStream(true).start();
+
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> kill = reaper.schedule(() -> {
+            timedOut.set(true);
+            destroyTree(process);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[CHUNK_BYTES];
+            long total = 0;
+            int carried = 0;
+            boolean truncated = false;
+            while (!truncated) {
+                int n;
+                try {
+                    n = in.read(buffer, carried, buffer.length - carried);
+                } catch (IOException e) {
+                    // killing the process closes its stream
+                    if (timedOut.get()) break;
+                    throw e;
+                }
+                if (n < 0) break;
+                int length = carried + n;
+                if (total + length > maxOutputBytes) {
+                    length = (int) (maxOutputBytes - total);
+                    truncated = true;
+                }
+                // a character split across reads goes out with the next chunk
+                int complete = truncated ? length : completeUtf8(buffer, length);
+                if (complete > 0) sink.write(new String(buffer, 0, complete, StandardCharsets.UTF_8));
+                total += complete;
+                carried = carried + n - complete;
+                System.arraycopy(buffer, complete, buffer, 0, carried);
+            }
+            if (truncated) destroyTree(process);
+            int exitCode = process.waitFor();
+
+            if (truncated) sink.write("\n... output truncated at " + maxOutputBytes + " bytes");
+            if (timedOut.get()) {
+                timeouts.increment();
+                sink.write("\nExecution timed out after " + timeoutMillis + " ms");
+            } else if (exitCode == CPU_LIMIT_EXIT) {
+                timeouts.increment();
+                sink.write("\nExecution stopped: CPU time limit of " + cpuSeconds + " s exceeded");
+            }
+            return exitCode;
+        } finally {
+            kill.cancel(false);
+            // the reader went away or the caller was interrupted
+            if (process.isAlive()) destroyTree(process);
+        }
+    }
+
+    /* ---------- internals ---------- */
+
+    private static final int CHUNK_BYTES = 8192;
+
+    private <T> Future<T> pool(Job<T> job) {
+        long queued = System.nanoTime();
+        try {
+            return pool.submit(() -> {
+                long started = System.nanoTime();
+                queueWait.record(started - queued, TimeUnit.NANOSECONDS);
+                try {
+                    return job.call();
+                } finally {
+                    runTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ExecutionRejectedException(pool.getQueue().size());
+        }
+    }
+
+    /** How many of the first length bytes form whole UTF-8 characters. */
+    private static int completeUtf8(byte[] bytes, int length) {
+        for (int i = length - 1; i >= Math.max(0, length - 3); i--) {
+            int b = bytes[i] & 0xff;
+            if (b < 0x80) return length;                 // ASCII ends the buffer
+            if (b >= 0xc0) {                             // lead byte: is its sequence whole?
+                int needed = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : 2;
+                return length - i >= needed ? length : i;
+            }
+        }
+        return length;
+    }
+
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+}
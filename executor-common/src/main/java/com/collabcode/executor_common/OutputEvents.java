@@ -0,0 +1,41 @@
+package com.collabcode.executor_common;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * The server-sent events of a streamed run. Chunks are sent as JSON, so
+ * the newlines in them cannot break the event framing.
+ */
+public final class OutputEvents {
+
+    public record Output(String text) { }
+
+    public record Exit(int exitCode) { }
+
+    private OutputEvents() { }
+
+    /** Sends each chunk as an "output" event; blocks while the connection is backed up. */
+    public static ExecutionScheduler.Sink sink(SseEmitter emitter) {
+        return chunk -> emitter.send(SseEmitter.event().name("output").data(new Output(chunk), MediaType.APPLICATION_JSON));
+    }
+
+    /** Ends the stream with an "exit" event, or with the error that stopped the run. */
+    public static BiConsumer<Integer, Throwable> finish(SseEmitter emitter) {
+        return (exitCode, error) -> {
+            if (error != null) {
+                emitter.completeWithError(error);
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("exit").data(new Exit(exitCode), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        };
+    }
+}
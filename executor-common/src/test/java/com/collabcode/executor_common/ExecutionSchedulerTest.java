@@ -0,0 +1,99 @@
+package com.collabcode.executor_common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionSchedulerTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final ExecutionScheduler scheduler = new ExecutionScheduler(registry, 1, 2, 1_000, 1, 64);
+
+	@AfterEach
+	void shutdown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	void rejectsRunsBeyondTheQueue() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(3);
+		List<Future<String>> accepted = List.of(
+				callers.submit(() -> scheduler.submit(() -> { release.await(); return "first"; })),
+				callers.submit(() -> scheduler.submit(() -> "second")),
+				callers.submit(() -> scheduler.submit(() -> "third")));
+		while (registry.get("execution.queue.depth").gauge().value() < 2) Thread.sleep(5);
+
+		assertThrows(ExecutionRejectedException.class, () -> scheduler.submit(() -> "fourth"));
+		assertEquals(1, registry.get("execution.rejected").counter().count());
+
+		release.countDown();
+		assertEquals("first", accepted.get(0).get());
+		assertEquals("second", accepted.get(1).get());
+		assertEquals("third", accepted.get(2).get());
+		callers.shutdown();
+	}
+
+	@Test
+	void killsTheProcessTreeAtTheWallClockLimit() throws Exception {
+		Path dir = Files.createTempDirectory("sched");
+		long start = System.nanoTime();
+		ExecutionScheduler.Output output = scheduler.exec(List.of("sh", "-c", "echo started; sleep 30 & wait"), dir);
+
+		assertTrue((System.nanoTime() - start) / 1_000_000 < 5_000);
+		assertTrue(output.text().startsWith("started\n"), output.text());
+		assertTrue(output.text().endsWith("Execution timed out after 1000 ms"), output.text());
+	}
+
+	@Test
+	void stopsAtTheCpuLimit() throws Exception {
+		ExecutionScheduler generous = new ExecutionScheduler(registry, 1, 2, 10_000, 1, 64);
+		ExecutionScheduler.Output output = generous.exec(List.of("sh", "-c", "while :; do :; done"), Files.createTempDirectory("sched"));
+
+		assertTrue(output.text().endsWith("CPU time limit of 1 s exceeded"), output.text());
+		generous.shutdown();
+	}
+
+	@Test
+	void streamsOutputWhileTheProcessRuns() throws Exception {
+		List<String> chunks = new ArrayList<>();
+		List<Boolean> runningWhenReceived = new ArrayList<>();
+		Path marker = Files.createTempDirectory("sched").resolve("done");
+		int exitCode = scheduler.exec(List.of("sh", "-c", "echo first; sleep 0.3; echo second; touch " + marker), marker.getParent(), chunk -> {
+			chunks.add(chunk);
+			runningWhenReceived.add(!Files.exists(marker));
+		});
+
+		assertEquals(0, exitCode);
+		assertEquals("first\nsecond\n", String.join("", chunks));
+		assertTrue(runningWhenReceived.get(0));
+	}
+
+	@Test
+	void aReaderGoingAwayKillsTheProcess() throws Exception {
+		long start = System.nanoTime();
+		assertThrows(IOException.class, () -> scheduler.exec(List.of("yes"), Files.createTempDirectory("sched"), chunk -> {
+			throw new IOException("client gone");
+		}));
+		assertTrue((System.nanoTime() - start) / 1_000_000 < 1_000);
+	}
+
+	@Test
+	void capsOutput() throws Exception {
+		ExecutionScheduler.Output output = scheduler.exec(List.of("yes"), Files.createTempDirectory("sched"));
+
+		assertEquals("y\n".repeat(32) + "\n... output truncated at 64 bytes", output.text());
+	}
+}
@@ -1,32 +1,169 @@
 package com.collabcode.executor_cpp;
 
-
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class CppExecutorService {
+
+    /** Flags of every compile; precompiled headers are built with them too. */
+    static final List<String> FLAGS = List.of();
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.-]*");
+    private static final Pattern LOCAL_INCLUDE = Pattern.compile("^\\s*#\\s*include\\s*\"([^\"]+)\"", Pattern.MULTILINE);
+
+    private final ExecutionScheduler scheduler;
+    private final CompileCache cache;
+    private final PrecompiledHeaders pch;
+
+    public CppExecutorService(ExecutionScheduler scheduler, CompileCache cache, PrecompiledHeaders pch) {
+        this.scheduler = scheduler;
+        this.cache = cache;
+        this.pch = pch;
+    }
+
     public String execute(String code) throws IOException, InterruptedException {
-        Path tempDir = Files.createTempDirectory("cpp-code");
-        File source = new File(tempDir.toFile(), "main.cpp");
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
+
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
 
-        try (FileWriter writer = new FileWriter(source)) {
-            writer.write(code);
+    /**
+     * Builds and runs a project of several files, by name. Each .cpp file is
+     * compiled to its own object file, cached by its source and the project
+     * headers it includes, so a run recompiles only the units that changed.
+     */
+    public String executeProject(Map<String, String> files) throws IOException, InterruptedException {
+        Map<String, String> sorted = new TreeMap<>(files);
+        for (String name : sorted.keySet()) {
+            if (!FILE_NAME.matcher(name).matches()) throw new IllegalArgumentException("bad file name: " + name);
         }
+        List<String> units = sorted.keySet().stream().filter(CppExecutorService::isUnit).toList();
+        if (units.isEmpty()) throw new IllegalArgumentException("a project needs at least one .cpp file");
+
+        return scheduler.submit(() -> {
+            Path tempDir = Files.createTempDirectory("cpp-project");
+            for (Map.Entry<String, String> file : sorted.entrySet()) {
+                Files.writeString(tempDir.resolve(file.getKey()), file.getValue());
+            }
 
-        Process compile = new ProcessBuilder("g++", source.getAbsolutePath(), "-o", tempDir + "/a.out")
-                .redirectErrorStream(true).start();
-        compile.waitFor();
+            List<String> objects = new ArrayList<>();
+            StringBuilder objectKeys = new StringBuilder();
+            for (String unit : units) {
+                String source = sorted.get(unit);
+                List<String> flags = flags(source);
+                StringBuilder inputs = new StringBuilder(unit).append('\0').append(source);
+                for (String header : localIncludes(source, sorted)) {
+                    inputs.append('\0').append(header).append('\0').append(sorted.get(header));
+                }
+                List<String> compileFlags = new ArrayList<>(flags);
+                compileFlags.add("-c");
+                String key = cache.key("g++", compileFlags, inputs.toString());
+                objectKeys.append(key).append('\n');
 
-        if (compile.exitValue() != 0) {
-            return new String(compile.getInputStream().readAllBytes());
+                Path object = tempDir.resolve(unit + ".o");
+                objects.add(object.toString());
+                if (!cache.get(key, object)) {
+                    ExecutionScheduler.Output compile = compile(key, compileFlags, List.of(unit, "-o", object.toString()), object, tempDir);
+                    if (compile.exitCode() != 0) {
+                        return compile.text();
+                    }
+                }
+            }
+
+            // linking is cached too, by the objects it takes
+            Path binary = tempDir.resolve("a.out");
+            String linkKey = cache.key("g++", FLAGS, "link\0" + objectKeys);
+            if (!cache.get(linkKey, binary)) {
+                List<String> args = new ArrayList<>(objects);
+                args.addAll(List.of("-o", binary.toString()));
+                ExecutionScheduler.Output link = compile(linkKey, FLAGS, args, binary, tempDir);
+                if (link.exitCode() != 0) {
+                    return link.text();
+                }
+            }
+
+            return scheduler.exec(List.of(binary.toString()), tempDir).text();
+        });
+    }
+
+    /* ---------- internals ---------- */
+
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
+        Path tempDir = Files.createTempDirectory("cpp-code");
+        Path binary = tempDir.resolve("a.out");
+        List<String> flags = flags(code);
+        String key = cache.key("g++", flags, code);
+
+        // unchanged code runs the binary compiled last time
+        if (!cache.get(key, binary)) {
+            File source = new File(tempDir.toFile(), "main.cpp");
+            try (FileWriter writer = new FileWriter(source)) {
+                writer.write(code);
+            }
+
+            ExecutionScheduler.Output compile = compile(key, flags, List.of(source.getAbsolutePath(), "-o", binary.toString()), binary, tempDir);
+            if (compile.exitCode() != 0) {
+                sink.write(compile.text());
+                return compile.exitCode();
+            }
         }
 
-        Process run = new ProcessBuilder(tempDir + "/a.out").redirectErrorStream(true).start();
-        String output = new String(run.getInputStream().readAllBytes());
-        run.waitFor();
+        return scheduler.exec(List.of(binary.toString()), tempDir, sink);
+    }
+
+    private List<String> flags(String source) {
+        List<String> flags = new ArrayList<>(FLAGS);
+        flags.addAll(pch.flagsFor(source));
+        return flags;
+    }
+
+    /** Runs g++ and caches what it produced under key if it succeeded. */
+    private ExecutionScheduler.Output compile(String key, List<String> flags, List<String> args, Path artifact, Path dir)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<String> command = new ArrayList<>(List.of("g++"));
+        command.addAll(flags);
+        command.addAll(args);
+        ExecutionScheduler.Output output = scheduler.exec(command, dir);
+        if (output.exitCode() == 0) cache.put(key, artifact, (System.nanoTime() - start) / 1_000_000);
         return output;
     }
-}
\ No newline at end of file
+
+    private static boolean isUnit(String name) {
+        return name.endsWith(".cpp") || name.endsWith(".cc") || name.endsWith(".cxx");
+    }
+
+    /** The project files a source includes with #include "...", directly or through one another. */
+    private static Set<String> localIncludes(String source, Map<String, String> files) {
+        Set<String> found = new TreeSet<>();
+        List<String> pending = new ArrayList<>(List.of(source));
+        while (!pending.isEmpty()) {
+            Matcher include = LOCAL_INCLUDE.matcher(pending.remove(pending.size() - 1));
+            while (include.find()) {
+                String name = include.group(1);
+                if (files.containsKey(name) && found.add(name)) pending.add(files.get(name));
+            }
+        }
+        return found;
+    }
+}
@@ -1,9 +1,12 @@
 package com.collabcode.executor_cpp;
 
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(ExecutionScheduler.class)
 public class ExecutorCppApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,165 @@
+package com.collabcode.executor_cpp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled headers for the standard headers most submissions start with,
+ * built by g++ in the background at startup. Each entry of
+ * {@code cpp.pch.headers} is one header set, its headers separated by spaces.
+ *
+ * A source whose leading #include lines cover a set is compiled with
+ * {@code -include} of that set's header, so g++ loads the parsed headers
+ * from the .gch file instead of parsing them again. The set's headers are
+ * ones the source includes anyway, before any code of its own, so the
+ * program means the same. Sources that define macros first get no PCH.
+ */
+@Component
+public class PrecompiledHeaders {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrecompiledHeaders.class);
+
+    private static final Pattern SYSTEM_INCLUDE = Pattern.compile("#\\s*include\\s*<([^>]+)>\\s*(//.*)?");
+
+    private final Path dir;
+    private final List<Set<String>> sets;
+    /** Built header sets and the header to -include for each. */
+    private final Map<Set<String>, Path> ready = new ConcurrentHashMap<>();
+
+    private final Counter used;
+    private final Counter unused;
+
+    public PrecompiledHeaders(MeterRegistry registry,
+                              @Value("${cpp.pch.dir:${java.io.tmpdir}/cpp-pch}") Path dir,
+                              @Value("${cpp.pch.headers:bits/stdc++.h,iostream,iostream string vector algorithm}") String headers) {
+        this.dir  = dir;
+        this.sets = Arrays.stream(headers.split(","))
+                          .map(String::trim)
+                          .filter(s -> !s.isEmpty())
+                          .map(s -> Set.of(s.split("\\s+")))
+                          .toList();
+        this.used   = Counter.builder("cpp.pch.compiles").tag("pch", "used").register(registry);
+        this.unused = Counter.builder("cpp.pch.compiles").tag("pch", "none").register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread builder = new Thread(this::buildAll, "cpp-pch-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /** The extra g++ flags that make a compile of source use a PCH; empty if none fits. */
+    public List<String> flagsFor(String source) {
+        Set<String> includes = leadingIncludes(source);
+        Set<String> best = null;
+        for (Set<String> set : ready.keySet()) {
+            if (includes.containsAll(set) && (best == null || set.size() > best.size())) best = set;
+        }
+        if (best == null) {
+            unused.increment();
+            return List.of();
+        }
+        used.increment();
+        return List.of("-include", ready.get(best).toString());
+    }
+
+    /** Builds every set now; for tests and benchmarks. */
+    public void buildAll() {
+        for (Set<String> set : sets) {
+            try {
+                ready.put(set, build(set));
+            } catch (IOException e) {
+                logger.warn("Could not precompile {}", set, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /* ---------- internals ---------- */
+
+    /** System headers #included before the first line of anything else. */
+    static Set<String> leadingIncludes(String source) {
+        Set<String> includes = new HashSet<>();
+        boolean comment = false;
+        for (String raw : source.split("\n")) {
+            String line = raw.strip();
+            if (comment) {
+                int end = line.indexOf("*/");
+                if (end < 0) continue;
+                comment = false;
+                line = line.substring(end + 2).strip();
+            }
+            if (line.startsWith("/*")) {
+                int end = line.indexOf("*/", 2);
+                if (end < 0) {
+                    comment = true;
+                    continue;
+                }
+                line = line.substring(end + 2).strip();
+            }
+            if (line.isEmpty() || line.startsWith("//")) continue;
+            Matcher include = SYSTEM_INCLUDE.matcher(line);
+            if (!include.matches()) break;
+            includes.add(include.group(1).trim());
+        }
+        return includes;
+    }
+
+    /** Compiles the header of a set, unless an earlier start did with the same g++ and flags. */
+    private Path build(Set<String> set) throws IOException, InterruptedException {
+        List<String> headers = set.stream().sorted().toList();
+        Path setDir = Files.createDirectories(dir.resolve(String.join("+", headers).replaceAll("[^A-Za-z0-9+.]", "_")));
+        Path header = setDir.resolve("pch.h");
+        Path gch = setDir.resolve("pch.h.gch");
+        Path stamp = setDir.resolve("pch.stamp");
+
+        StringBuilder text = new StringBuilder();
+        for (String h : headers) text.append("#include <").append(h).append(">\n");
+        String expected = run(List.of("g++", "--version")).lines().findFirst().orElse("") + "\n"
+                          + CppExecutorService.FLAGS + "\n" + text;
+        if (Files.exists(gch) && Files.exists(stamp) && Files.readString(stamp).equals(expected)) return header;
+
+        long start = System.nanoTime();
+        Files.writeString(header, text);
+        Path staged = setDir.resolve("pch.h.gch.tmp");
+        List<String> command = new ArrayList<>(List.of("g++"));
+        command.addAll(CppExecutorService.FLAGS);
+        command.addAll(List.of("-x", "c++-header", header.toString(), "-o", staged.toString()));
+        String output = run(command);
+        if (!Files.exists(staged)) throw new IOException("g++ failed: " + output);
+        Files.move(staged, gch, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(stamp, expected);
+        logger.info("Precompiled {} in {} ms", headers, (System.nanoTime() - start) / 1_000_000);
+        return header;
+    }
+
+    private static String run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return output;
+    }
+}
@@ -0,0 +1,116 @@
+package com.collabcode.executor_cpp;
+
+import com.collabcode.executor_common.ExecutionScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CppExecutorServiceTest {
+
+	private static final Map<String, String> SUBMISSIONS = Map.of(
+			"hello", """
+					#include <iostream>
+					int main() { std::cout << "hi" << std::endl; }
+					""",
+			"stl", """
+					#include <iostream>
+					#include <string>
+					#include <vector>
+					#include <algorithm>
+					using namespace std;
+					int main() { vector<string> v{"b", "a"}; sort(v.begin(), v.end()); cout << v[0] << endl; }
+					""",
+			"contest", """
+					#include <bits/stdc++.h>
+					using namespace std;
+					int main() { map<int, set<int>> m; m[1].insert(2); cout << m.size() << endl; }
+					""");
+
+	private static Path pchDir;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeAll
+	static void buildHeaders() throws Exception {
+		assumeTrue(new ProcessBuilder("g++", "--version").start().waitFor() == 0, "g++ is not installed");
+		pchDir = Files.createTempDirectory("cpp-pch");
+		headers("bits/stdc++.h,iostream,iostream string vector algorithm").buildAll();
+	}
+
+	@Test
+	void leadingIncludesStopAtTheFirstOtherLine() {
+		assertEquals(Set.of("iostream", "vector"), PrecompiledHeaders.leadingIncludes("""
+				// a comment
+				/* a block
+				   comment */
+				#include <iostream>
+				#include <vector>   // arrays
+				#define N 10
+				#include <string>
+				"""));
+	}
+
+	@Test
+	void projectsRecompileOnlyChangedUnits() throws Exception {
+		CppExecutorService service = service(headers(""));
+		Map<String, String> project = Map.of(
+				"main.cpp", "#include \"util.h\"\n#include <iostream>\nint main() { std::cout << twice(21) << std::endl; }\n",
+				"util.h", "int twice(int x);\n",
+				"util.cpp", "#include \"util.h\"\nint twice(int x) { return 2 * x; }\n");
+		assertEquals("42\n", service.executeProject(project));
+		assertEquals(0, hits());
+
+		Map<String, String> changed = new java.util.HashMap<>(project);
+		changed.put("util.cpp", "#include \"util.h\"\nint twice(int x) { return x + x + 1; }\n");
+		assertEquals("43\n", service.executeProject(changed));
+		assertEquals(1, hits());     // main.cpp only; util.cpp and the link are new
+
+		assertEquals("43\n", service.executeProject(changed));
+		assertEquals(1 + 3, hits());  // both objects and the binary
+	}
+
+	@Test
+	void submissionsCompileWithTheLargestPrecompiledSetTheyInclude() throws Exception {
+		PrecompiledHeaders headers = headers("bits/stdc++.h,iostream,iostream string vector algorithm");
+		CppExecutorService precompiled = service(headers);
+
+		assertEquals(List.of(), headers("").flagsFor(SUBMISSIONS.get("contest")));
+		Map<String, String> expected = Map.of("hello", "iostream", "stl", "algorithm+iostream+string+vector",
+				"contest", "bits_stdc++.h");
+		Map<String, String> output = Map.of("hello", "hi\n", "stl", "a\n", "contest", "1\n");
+		for (String name : SUBMISSIONS.keySet()) {
+			List<String> flags = headers.flagsFor(SUBMISSIONS.get(name));
+			assertEquals("-include", flags.get(0), name);
+			Path header = Path.of(flags.get(1));
+			assertEquals(expected.get(name), header.getParent().getFileName().toString());
+			assertTrue(Files.exists(header.resolveSibling("pch.h.gch")), name);
+			assertEquals(output.get(name), precompiled.execute(SUBMISSIONS.get(name)), name);
+		}
+		assertEquals(List.of(), headers.flagsFor("#define N 10\n" + SUBMISSIONS.get("contest")));
+	}
+
+	private double hits() {
+		return registry.get("compile.cache.requests").tag("result", "hit").counter().count();
+	}
+
+	private CppExecutorService service(PrecompiledHeaders headers) throws Exception {
+		ExecutionScheduler scheduler = new ExecutionScheduler(registry, 1, 4, 60_000, 60, 1 << 16);
+		CompileCache cache = new CompileCache(registry, Files.createTempDirectory("compile-cache"), 1 << 30);
+		return new CppExecutorService(scheduler, cache, headers);
+	}
+
+	private static PrecompiledHeaders headers(String sets) {
+		PrecompiledHeaders headers = new PrecompiledHeaders(new SimpleMeterRegistry(), pchDir, sets);
+		headers.buildAll();
+		return headers;
+	}
+}
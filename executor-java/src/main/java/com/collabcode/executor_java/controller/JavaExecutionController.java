@@ -1,8 +1,14 @@
 package com.collabcode.executor_java.controller;
 
+import com.collabcode.executor_common.ExecutionRejectedException;
+import com.collabcode.executor_common.OutputEvents;
 import com.collabcode.executor_java.service.JavaExecutorService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 
@@ -17,4 +23,17 @@ public class JavaExecutionController {
     public String runJavaCode(@RequestBody String code) throws IOException, InterruptedException {
         return javaExecutorService.execute(code);
     }
+
+    /** Output as server-sent events: "output" events of {text}, then one "exit" event of {exitCode}. */
+    @PostMapping(value = "/java/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJavaCode(@RequestBody String code) {
+        SseEmitter emitter = new SseEmitter(0L);
+        javaExecutorService.stream(code, OutputEvents.sink(emitter)).whenComplete(OutputEvents.finish(emitter));
+        return emitter;
+    }
+
+    @ExceptionHandler(ExecutionRejectedException.class)
+    public ResponseEntity<String> busy(ExecutionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").body(e.getMessage());
+    }
 }
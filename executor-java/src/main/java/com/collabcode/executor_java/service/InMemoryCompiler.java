@@ -0,0 +1,177 @@
+package com.collabcode.executor_java.service;
+
+import org.springframework.stereotype.Service;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Compiles a source file with the javac of this JVM, in memory: no temp
+ * directory and no javac process, so a compile costs tens of milliseconds
+ * once javac's own classes are warm. Classes of a source compiled before
+ * come from the {@link CompileCache} without running javac at all.
+ */
+@Service
+public class InMemoryCompiler {
+
+    private static final List<String> OPTIONS = List.of("-proc:none", "-Xlint:none");
+
+    private final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    private final Queue<StandardJavaFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+    private final CompileCache cache;
+
+    public InMemoryCompiler(CompileCache cache) {
+        this.cache = cache;
+    }
+
+    /** Class files by binary name, or diagnostics in javac's format when it failed. */
+    public record Compilation(Map<String, byte[]> classes, String diagnostics) {
+        public boolean succeeded() {
+            return classes != null;
+        }
+    }
+
+    public Compilation compile(String className, String source) {
+        String key = cache.key(OPTIONS, className + "\0" + source);
+        Optional<byte[]> cached = cache.get(key);
+        if (cached.isPresent()) return new Compilation(unpack(cached.get()), "");
+        if (javac == null) throw new IllegalStateException("no Java compiler: run the executor on a JDK, not a JRE");
+        long start = System.nanoTime();
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> output = new LinkedHashMap<>();
+        StandardJavaFileManager files;
+        try {
+            files = fileManager();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + className + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        ForwardingJavaFileManager<StandardJavaFileManager> memory = new ForwardingJavaFileManager<>(files) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name,
+                                                       JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return output.computeIfAbsent(name, n -> new ByteArrayOutputStream());
+                    }
+                };
+            }
+        };
+
+        boolean ok;
+        try {
+            ok = javac.getTask(null, memory, diagnostics, OPTIONS, null, List.of(sourceFile)).call();
+        } finally {
+            fileManagers.offer(files);
+        }
+        if (!ok) return new Compilation(null, format(className, source, diagnostics.getDiagnostics()));
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        output.forEach((name, bytes) -> classes.put(name, bytes.toByteArray()));
+        cache.put(key, pack(classes), (System.nanoTime() - start) / 1_000_000);
+        return new Compilation(classes, "");
+    }
+
+    /* ---------- internals ---------- */
+
+    /**
+     * A file manager caches what it has read of the JDK's modules, which is
+     * most of a small compile's cost, so they are reused; one per compile at
+     * a time, as they are not thread-safe.
+     */
+    private StandardJavaFileManager fileManager() throws IOException {
+        StandardJavaFileManager files = fileManagers.poll();
+        if (files != null) return files;
+        files = javac.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+        // programs see the JDK only, as with a bare javac; not this application's jars
+        files.setLocation(StandardLocation.CLASS_PATH, List.of());
+        return files;
+    }
+
+    /** Class files as one artifact: count, then name, length and bytes of each. */
+    private static byte[] pack(Map<String, byte[]> classes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+                out.writeUTF(c.getKey());
+                out.writeInt(c.getValue().length);
+                out.write(c.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, byte[]> unpack(byte[] artifact) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(artifact))) {
+            for (int n = in.readInt(); n > 0; n--) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classes;
+    }
+
+    /** Renders diagnostics as the javac command line does: location, message, source line and caret. */
+    private static String format(String className, String source, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        String[] lines = source.split("\r?\n", -1);
+        StringBuilder out = new StringBuilder();
+        int errors = 0;
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
+            String kind = switch (d.getKind()) {
+                case ERROR -> "error";
+                case WARNING, MANDATORY_WARNING -> "warning";
+                default -> "note";
+            };
+            if (d.getKind() == Diagnostic.Kind.ERROR) errors++;
+            long line = d.getLineNumber();
+            if (line > 0) out.append(className).append(".java:").append(line).append(": ");
+            out.append(kind).append(": ").append(d.getMessage(Locale.ROOT)).append('\n');
+            if (line > 0 && line <= lines.length && d.getColumnNumber() > 0) {
+                out.append(lines[(int) line - 1]).append('\n')
+                   .append(" ".repeat((int) d.getColumnNumber() - 1)).append("^\n");
+            }
+        }
+        out.append(errors).append(errors == 1 ? " error\n" : " errors\n");
+        return out.toString();
+    }
+}
@@ -1,45 +1,51 @@
 package com.collabcode.executor_java.service;
 
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Compiles a program in memory and runs it on a warm worker JVM, rather than
+ * forking javac and then a fresh java process for every run.
+ */
 @Service
 public class JavaExecutorService {
 
-    public String execute(String code) throws IOException, InterruptedException {
-        String className = "UserCode";
-        Path tempDir = Files.createTempDirectory("code");
-        File sourceFile = new File(tempDir.toFile(), className + ".java");
-
-        // Write source code to file
-        try (FileWriter writer = new FileWriter(sourceFile)) {
-            writer.write(code);
-        }
+    private static final String CLASS_NAME = "UserCode";
 
-        // Compile the Java file
-        Process compile = new ProcessBuilder("javac", sourceFile.getAbsolutePath())
-                .redirectErrorStream(true)
-                .directory(tempDir.toFile())
-                .start();
+    private final InMemoryCompiler compiler;
+    private final WorkerPool workers;
+    private final ExecutionScheduler scheduler;
 
-        String compileOutput = new String(compile.getInputStream().readAllBytes());
-        compile.waitFor();
+    public JavaExecutorService(InMemoryCompiler compiler, WorkerPool workers, ExecutionScheduler scheduler) {
+        this.compiler = compiler;
+        this.workers = workers;
+        this.scheduler = scheduler;
+    }
 
-        if (compile.exitValue() != 0) {
-            return "Compilation failed:\n" + compileOutput;
-        }
+    public String execute(String code) throws IOException, InterruptedException {
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
 
-        // Run the class
-        Process run = new ProcessBuilder("java", "-cp", tempDir.toString(), className)
-                .redirectErrorStream(true)
-                .start();
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
 
-        String output = new String(run.getInputStream().readAllBytes());
-        run.waitFor();
+    /* ---------- internals ---------- */
 
-        return output;
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
+        InMemoryCompiler.Compilation compilation = compiler.compile(CLASS_NAME, code);
+        if (!compilation.succeeded()) {
+            sink.write("Compilation failed:\n" + compilation.diagnostics());
+            return 1;
+        }
+        return workers.run(compilation.classes(), CLASS_NAME, sink);
     }
 }
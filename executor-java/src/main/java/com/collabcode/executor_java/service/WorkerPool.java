@@ -0,0 +1,263 @@
+package com.collabcode.executor_java.service;
+
+import com.collabcode.executor_common.ExecutionScheduler;
+import com.collabcode.executor_java.worker.ExecutionWorker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of warm {@link ExecutionWorker} JVMs. Compiled classes go to a
+ * worker over its stdin and the output comes back over its stdout as the
+ * program writes it, so a run costs no JVM startup.
+ *
+ * A worker runs a single program: it is retired after the run, or when the
+ * run outlives {@code executor.java.timeout-ms}, and a fresh one is started
+ * in its place. A program can reach the worker's own classes and any
+ * JVM-wide state, so no program ever shares a JVM with another user's.
+ * Each new worker runs a small program once before it takes work, so its
+ * run finds the JIT and class data warm.
+ */
+@Service
+public class WorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final String WARM_UP_CLASS = "WarmUp";
+    private static final String WARM_UP_SOURCE = """
+            public class WarmUp {
+                public static void main(String[] args) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < 1000; i++) sb.append(i % 10);
+                    System.out.println("warm " + sb.length() + " " + String.format("%d", 42) + " " + java.util.List.of(1, 2));
+                }
+            }
+            """;
+
+    private final InMemoryCompiler compiler;
+    private final int size;
+    private final long timeoutMillis;
+    private final int maxOutputBytes;
+    private final List<String> jvmArgs;
+
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService spawner;
+    private final ScheduledExecutorService reaper;
+    private Path classpath;
+    private volatile Map<String, byte[]> warmUp;
+    private volatile boolean closed;
+
+    public WorkerPool(InMemoryCompiler compiler,
+                      @Value("${executor.java.workers:2}") int size,
+                      @Value("${executor.java.timeout-ms:10000}") long timeoutMillis,
+                      @Value("${executor.java.max-output-bytes:1048576}") int maxOutputBytes,
+                      @Value("${executor.java.worker.jvm-args:-Xmx256m -XX:+UseSerialGC}") String jvmArgs) {
+        this.compiler       = compiler;
+        this.size           = size;
+        this.timeoutMillis  = timeoutMillis;
+        this.maxOutputBytes = maxOutputBytes;
+        this.jvmArgs        = jvmArgs.isBlank() ? List.of() : Arrays.asList(jvmArgs.trim().split("\\s+"));
+        // workers are replaced after every run, so they are started as many at a time
+        this.spawner = Executors.newScheduledThreadPool(size, r -> {
+            Thread t = new Thread(r, "java-worker-spawner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "java-worker-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        classpath = extractWorkerClasses();
+        // compiling once also warms up javac for the first request
+        spawner.execute(() -> warmUp = compiler.compile(WARM_UP_CLASS, WARM_UP_SOURCE).classes());
+        for (int i = 0; i < size; i++) spawner.execute(this::spawn);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        spawner.shutdownNow();
+        reaper.shutdownNow();
+        List<Worker> workers = new ArrayList<>();
+        idle.drainTo(workers);
+        workers.forEach(Worker::kill);
+    }
+
+    /**
+     * Runs a compiled program on a warm worker, passing what it prints to
+     * sink as it comes, and returns its exit status. The program prints no
+     * faster than sink takes its output. Waits up to
+     * {@code executor.java.timeout-ms} for a free worker.
+     *
+     * @throws IOException when sink does; the run is then stopped
+     */
+    public int run(Map<String, byte[]> classes, String mainClass, ExecutionScheduler.Sink sink)
+            throws IOException, InterruptedException {
+        Worker worker = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (worker == null) throw new IllegalStateException("no Java worker became free within " + timeoutMillis + " ms");
+
+        ScheduledFuture<?> kill = reaper.schedule(worker::kill, timeoutMillis, TimeUnit.MILLISECONDS);
+        Output output = new Output(sink);
+        try {
+            return worker.exchange(classes, mainClass, output);
+        } catch (IOException e) {
+            if (output.failure != null) throw output.failure;
+            if (worker.killed) {
+                sink.write((output.written ? "\n" : "") + "Execution timed out after " + timeoutMillis + " ms");
+                return KILLED_EXIT;
+            }
+            logger.warn("Java worker {} failed during a run", worker.process.pid(), e);
+            sink.write((output.written ? "\n" : "") + "Execution failed: the worker JVM stopped unexpectedly");
+            return KILLED_EXIT;
+        } finally {
+            kill.cancel(false);
+            retire(worker);
+        }
+    }
+
+    /** Workers ready to take a run; for metrics and tests. */
+    public int idleWorkers() {
+        return idle.size();
+    }
+
+    /* ---------- internals ---------- */
+
+    /** Exit status of a run whose worker was killed, as of a process killed by SIGKILL. */
+    private static final int KILLED_EXIT = 128 + 9;
+
+    /** A run's sink, remembering whether it was written to and whether it failed. */
+    private static final class Output {
+        final ExecutionScheduler.Sink sink;
+        boolean written;
+        IOException failure;
+
+        Output(ExecutionScheduler.Sink sink) {
+            this.sink = sink;
+        }
+
+        void write(String chunk) throws IOException {
+            try {
+                sink.write(chunk);
+                written = true;
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    private final class Worker {
+        final Process process;
+        final DataOutputStream to;
+        final DataInputStream from;
+        volatile boolean killed;
+
+        Worker(Process process) {
+            this.process = process;
+            this.to      = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.from    = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /** Runs a program and returns its exit status. */
+        int exchange(Map<String, byte[]> classes, String mainClass, Output output) throws IOException {
+            to.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+                to.writeUTF(c.getKey());
+                to.writeInt(c.getValue().length);
+                to.write(c.getValue());
+            }
+            to.writeUTF(mainClass);
+            to.flush();
+
+            byte[] chunk = new byte[ExecutionWorker.CHUNK_BYTES];
+            int length;
+            while ((length = from.readInt()) != 0) {
+                // the program can write to the worker's real stdout and garble the frames
+                if (length < 0 || length > chunk.length) throw new IOException("bad chunk length " + length);
+                from.readFully(chunk, 0, length);
+                output.write(new String(chunk, 0, length, StandardCharsets.UTF_8));
+            }
+            return from.readInt();
+        }
+
+        void kill() {
+            killed = true;
+            process.destroyForcibly();
+        }
+    }
+
+    private void spawn() {
+        if (closed) return;
+        Worker worker = null;
+        try {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath.toString(), ExecutionWorker.class.getName(), Integer.toString(maxOutputBytes)));
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            worker = new Worker(process);
+            if (worker.from.readInt() != ExecutionWorker.READY) throw new IOException("worker did not start");
+            if (warmUp != null) worker.exchange(warmUp, WARM_UP_CLASS, new Output(chunk -> { }));
+            idle.add(worker);
+        } catch (IOException e) {
+            logger.warn("Could not start a Java worker, retrying in 1s", e);
+            if (worker != null) worker.kill();
+            if (!closed) spawner.schedule(this::spawn, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private void retire(Worker worker) {
+        worker.kill();
+        if (closed) return;
+        try {
+            spawner.execute(this::spawn);
+        } catch (RuntimeException e) {
+            // shutting down
+        }
+    }
+
+    /** Copies the worker's classes out of the application (which may be a fat jar) into a temp classpath. */
+    private static Path extractWorkerClasses() throws IOException {
+        Path dir = Files.createTempDirectory("java-worker");
+        for (Class<?> c : ExecutionWorker.CLASSES) {
+            String resource = c.getName().replace('.', '/') + ".class";
+            Path target = dir.resolve(resource);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = ExecutionWorker.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) throw new IOException("missing " + resource);
+                Files.copy(in, target);
+            }
+        }
+        return dir;
+    }
+}
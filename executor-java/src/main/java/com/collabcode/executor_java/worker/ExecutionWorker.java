@@ -0,0 +1,298 @@
+package com.collabcode.executor_java.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Main class of a warm execution worker: a small JVM started by
+ * {@link com.collabcode.executor_java.service.WorkerPool} that runs compiled
+ * programs, each in a fresh class loader. The pool gives it its own warm-up
+ * program and then a single user program, and retires it after that run. It
+ * talks to the pool over its stdin and stdout:
+ *
+ * <pre>
+ *   worker: int READY                                         once started
+ *   pool:   int n, n * (UTF name, int len, byte[len]), UTF main class
+ *   worker: int len, byte[len]                                 output as the program writes it
+ *   worker: int 0, int exit status                             once the program ends
+ * </pre>
+ *
+ * A program's stdout and stderr are captured together, as the javac + java
+ * pipeline did, and sent every {@link #FLUSH_MILLIS} ms or {@link #CHUNK_BYTES}
+ * bytes in chunks of whole UTF-8 characters. A program writing faster than
+ * the pool reads blocks in its print calls. The exit status is 1 when main
+ * threw or could not be called, else 0; a program that called System.exit
+ * also reports 0, as shutdown hooks cannot see its status.
+ *
+ * The worker runs without the application's classpath, so it may only use
+ * JDK classes.
+ */
+public final class ExecutionWorker {
+
+    public static final int READY = 0x4a415641;
+
+    /** Largest output chunk a worker sends. */
+    public static final int CHUNK_BYTES = 8192;
+
+    private static final long FLUSH_MILLIS = 10;
+
+    /** The classes a worker's classpath must hold. */
+    public static final List<Class<?>> CLASSES = List.of(ExecutionWorker.class, BytecodeLoader.class, CappedOutput.class);
+
+    private static DataOutputStream pool;
+    private static CappedOutput current;
+
+    private ExecutionWorker() { }
+
+    public static void main(String[] args) throws Exception {
+        int maxOutputBytes = Integer.parseInt(args[0]);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        pool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        Runtime.getRuntime().addShutdownHook(new Thread(ExecutionWorker::exiting));
+        Thread flusher = new Thread(ExecutionWorker::flushPeriodically, "output-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        pool.writeInt(READY);
+        pool.flush();
+        while (true) {
+            int count;
+            try {
+                count = in.readInt();
+            } catch (EOFException e) {
+                return;     // the pool went away
+            }
+            Map<String, byte[]> classes = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            String mainClass = in.readUTF();
+
+            CappedOutput output = new CappedOutput(maxOutputBytes);
+            int exitCode = run(classes, mainClass, output);
+            end(exitCode, output);
+        }
+    }
+
+    /* ---------- internals ---------- */
+
+    /** Runs a program to its end and returns its exit status. */
+    private static int run(Map<String, byte[]> classes, String mainClass, CappedOutput output)
+            throws InterruptedException {
+        PrintStream print = new PrintStream(output, true, StandardCharsets.UTF_8);
+        System.setOut(print);
+        System.setErr(print);
+        synchronized (ExecutionWorker.class) {
+            current = output;
+        }
+
+        ClassLoader loader = new BytecodeLoader(classes);
+        ThreadGroup group = new ThreadGroup("user-code");
+        boolean[] failed = new boolean[1];
+        Thread main = new Thread(group, () -> failed[0] = !invokeMain(loader, mainClass), "main");
+        main.setContextClassLoader(loader);
+        main.start();
+        main.join();
+
+        // like the java launcher, wait for the program's other non-daemon threads
+        boolean waited = true;
+        while (waited) {
+            waited = false;
+            for (Thread thread : threads(group)) {
+                if (!thread.isDaemon()) {
+                    thread.join();
+                    waited = true;
+                }
+            }
+        }
+        print.flush();
+        return failed[0] ? 1 : 0;
+    }
+
+    /** Calls the program's main method; false when it threw or could not be called. */
+    private static boolean invokeMain(ClassLoader loader, String mainClass) {
+        Method main;
+        try {
+            main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+            main.setAccessible(true);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("Error: Main method not found in class " + mainClass
+                               + ", please define the main method as:\n   public static void main(String[] args)");
+            return false;
+        }
+        try {
+            main.invoke(null, (Object) new String[0]);
+            return true;
+        } catch (InvocationTargetException e) {
+            System.err.print("Exception in thread \"main\" ");
+            e.getCause().printStackTrace();
+        } catch (IllegalAccessException e) {
+            System.err.println("Error: cannot call " + mainClass + ".main: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static Thread[] threads(ThreadGroup group) {
+        Thread[] threads = new Thread[group.activeCount() + 8];
+        return Arrays.copyOf(threads, group.enumerate(threads));
+    }
+
+    /** Sends what is left of a run's output and its end, unless the shutdown hook already did. */
+    private static void end(int exitCode, CappedOutput output) throws IOException {
+        output.finish();
+        synchronized (ExecutionWorker.class) {
+            if (current != output) return;
+            current = null;
+            pool.writeInt(0);
+            pool.writeInt(exitCode);
+            pool.flush();
+        }
+    }
+
+    /** Sends an output chunk of the current run; output of a finished run is dropped. */
+    private static synchronized void chunk(CappedOutput output, byte[] bytes, int length) throws IOException {
+        if (current != output || length == 0) return;
+        pool.writeInt(length);
+        pool.write(bytes, 0, length);
+        pool.flush();
+    }
+
+    /** Sends output a program wrote but did not fill a chunk with, so it shows while the program runs. */
+    private static void flushPeriodically() {
+        while (true) {
+            try {
+                Thread.sleep(FLUSH_MILLIS);
+                CappedOutput output;
+                synchronized (ExecutionWorker.class) {
+                    output = current;
+                }
+                if (output != null) output.drain();
+            } catch (InterruptedException | IOException e) {
+                return;     // the pool went away
+            }
+        }
+    }
+
+    /** The program called System.exit: send what it printed before the JVM goes. */
+    private static void exiting() {
+        CappedOutput output;
+        synchronized (ExecutionWorker.class) {
+            output = current;
+        }
+        if (output == null) return;
+        try {
+            end(0, output);
+        } catch (IOException ignored) {
+            // the pool sees the worker die either way
+        }
+    }
+
+    /** Defines a program's classes; the worker's own classes stay out of its reach. */
+    static final class BytecodeLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        BytecodeLoader(Map<String, byte[]> classes) {
+            super("user-code", ClassLoader.getPlatformClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Passes on the first maxBytes bytes written to it in chunks, and counts
+     * the rest. Locks itself before the worker, never the other way round.
+     */
+    static final class CappedOutput extends OutputStream {
+        private final byte[] pending = new byte[CHUNK_BYTES];
+        private final int maxBytes;
+        private int size;
+        private long kept;
+        private long dropped;
+        private boolean closed;
+
+        CappedOutput(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) return;
+            int keep = (int) Math.min(len, maxBytes - kept);
+            dropped += len - keep;
+            kept += keep;
+            while (keep > 0) {
+                int n = Math.min(keep, pending.length - size);
+                System.arraycopy(b, off, pending, size, n);
+                size += n;
+                off += n;
+                keep -= n;
+                if (size == pending.length) drain();
+            }
+        }
+
+        /** Sends the whole characters written so far; a split one waits for its other bytes. */
+        synchronized void drain() throws IOException {
+            send(closed ? size : completeUtf8(pending, size));
+        }
+
+        /** Sends the rest of the output and a note of what was dropped; later writes are dropped. */
+        synchronized void finish() throws IOException {
+            if (closed) return;
+            closed = true;
+            drain();
+            if (dropped == 0) return;
+            byte[] note = ("\n... " + dropped + " more bytes of output dropped\n").getBytes(StandardCharsets.UTF_8);
+            chunk(this, note, note.length);
+        }
+
+        private void send(int length) throws IOException {
+            chunk(this, pending, length);
+            size -= length;
+            System.arraycopy(pending, length, pending, 0, size);
+        }
+
+        /** How many of the first length bytes form whole UTF-8 characters. */
+        private static int completeUtf8(byte[] bytes, int length) {
+            for (int i = length - 1; i >= Math.max(0, length - 3); i--) {
+                int b = bytes[i] & 0xff;
+                if (b < 0x80) return length;                 // ASCII ends the buffer
+                if (b >= 0xc0) {                             // lead byte: is its sequence whole?
+                    int needed = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : 2;
+                    return length - i >= needed ? length : i;
+                }
+            }
+            return length;
+        }
+    }
+}
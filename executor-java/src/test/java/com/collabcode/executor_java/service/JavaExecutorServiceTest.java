@@ -0,0 +1,188 @@
+package com.collabcode.executor_java.service;
+
+import com.collabcode.executor_common.ExecutionScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaExecutorServiceTest {
+
+	private static final String HELLO = """
+			public class UserCode {
+			    public static void main(String[] args) {
+			        System.out.println("Hello, world!");
+			    }
+			}
+			""";
+
+	private final CompileCache cache = newCache();
+	private final InMemoryCompiler compiler = new InMemoryCompiler(cache);
+	private final WorkerPool workers = new WorkerPool(compiler, 1, 5_000, 1_024, "-Xmx64m -XX:+UseSerialGC");
+	private final JavaExecutorService service = new JavaExecutorService(compiler, workers, new ExecutionScheduler(new SimpleMeterRegistry(), 1, 4, 5_000, 5, 1_024));
+
+	@AfterEach
+	void shutdown() {
+		workers.shutdown();
+	}
+
+	@Test
+	void runsOutputAndErrorsLikeTheJavaLauncher() throws Exception {
+		workers.start();
+
+		assertEquals("Hello, world!\n", service.execute(HELLO));
+
+		String failed = service.execute("public class UserCode { void f() { int x = \"s\"; } }");
+		assertTrue(failed.startsWith("Compilation failed:\nUserCode.java:1: error: incompatible types"), failed);
+
+		String thrown = service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        System.out.println("before");
+				        throw new IllegalStateException("boom");
+				    }
+				}
+				""");
+		assertTrue(thrown.startsWith("before\nException in thread \"main\" java.lang.IllegalStateException: boom"), thrown);
+
+		String big = service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        for (int i = 0; i < 1000; i++) System.out.println("line " + i);
+				    }
+				}
+				""");
+		assertTrue(big.contains("more bytes of output dropped"), big);
+	}
+
+	@Test
+	void misbehavingProgramsCostTheirWorkerOnly() throws Exception {
+		workers.start();
+
+		assertEquals("bye\n", service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        System.out.println("bye");
+				        System.exit(3);
+				    }
+				}
+				"""));
+		assertEquals("Execution timed out after 5000 ms", service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        while (true) { }
+				    }
+				}
+				"""));
+		// each was retired and replaced by a fresh worker
+		assertEquals("Hello, world!\n", service.execute(HELLO));
+	}
+
+	@Test
+	void programsCannotLeaveStateForTheNextOne() throws Exception {
+		workers.start();
+
+		assertEquals("", service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        System.setProperty("left.behind", "yes");
+				        java.util.Locale.setDefault(java.util.Locale.JAPAN);
+				        java.net.ProxySelector.setDefault(null);
+				        Thread lingering = new Thread(Thread.currentThread().getThreadGroup().getParent(), () -> {
+				            while (true) Thread.onSpinWait();
+				        }, "lingering");
+				        lingering.setDaemon(true);
+				        lingering.start();
+				    }
+				}
+				"""));
+		assertEquals("null false true\n", service.execute("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        boolean lingering = Thread.getAllStackTraces().keySet().stream()
+				            .anyMatch(t -> t.getName().equals("lingering"));
+				        System.out.println(System.getProperty("left.behind") + " " + lingering
+				                           + " " + (java.net.ProxySelector.getDefault() != null));
+				    }
+				}
+				"""));
+	}
+
+	@Test
+	void streamsOutputWhileTheProgramRuns() throws Exception {
+		workers.start();
+		List<String> chunks = new CopyOnWriteArrayList<>();
+		List<Long> received = new CopyOnWriteArrayList<>();
+		long start = System.nanoTime();
+		int exitCode = service.stream("""
+				public class UserCode {
+				    public static void main(String[] args) throws Exception {
+				        System.out.println("first");
+				        Thread.sleep(500);
+				        System.out.println("second \u00e9");
+				        throw new IllegalStateException("boom");
+				    }
+				}
+				""", chunk -> {
+			chunks.add(chunk);
+			received.add((System.nanoTime() - start) / 1_000_000);
+		}).get();
+
+		assertEquals(1, exitCode);
+		assertTrue(String.join("", chunks).startsWith("first\nsecond \u00e9\nException in thread \"main\""), chunks.toString());
+		assertEquals("first\n", chunks.get(0));
+		assertTrue(received.get(received.size() - 1) - received.get(0) >= 400, received.toString());
+
+		// a reader that goes away stops the run and costs the worker
+		ExecutionException gone = assertThrows(ExecutionException.class, () -> service.stream("""
+				public class UserCode {
+				    public static void main(String[] args) {
+				        while (true) System.out.println("y");
+				    }
+				}
+				""", chunk -> {
+			throw new IOException("client gone");
+		}).get(2, TimeUnit.SECONDS));
+		assertEquals("client gone", gone.getCause().getMessage());
+		assertEquals("Hello, world!\n", service.execute(HELLO));
+	}
+
+	/** A warm worker runs each new source once compiled and then from the cache. */
+	@Test
+	void repeatedRunsComeFromTheCache() throws Exception {
+		workers.start();
+		for (int i = 0; i < 10; i++) {
+			String source = HELLO + "// run " + i + "\n";
+			assertEquals("Hello, world!\n", service.execute(source));
+			assertEquals("Hello, world!\n", service.execute(source));
+		}
+		assertEquals(0.5, cache.hitRatio(), 0.05);
+	}
+
+	@Test
+	void unchangedSourceSkipsJavac() throws Exception {
+		InMemoryCompiler.Compilation first = compiler.compile("UserCode", HELLO);
+		InMemoryCompiler.Compilation second = compiler.compile("UserCode", HELLO);
+
+		assertArrayEquals(first.classes().get("UserCode"), second.classes().get("UserCode"));
+		assertEquals(0.5, cache.hitRatio());
+		assertFalse(compiler.compile("UserCode", "class UserCode {").succeeded());
+	}
+
+	private static CompileCache newCache() {
+		try {
+			return new CompileCache(new SimpleMeterRegistry(), Files.createTempDirectory("compile-cache"), 1 << 20);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package com.collabcode.executor_js;
 
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(ExecutionScheduler.class)
 public class ExecutorJsApplication {
 
 	public static void main(String[] args) {
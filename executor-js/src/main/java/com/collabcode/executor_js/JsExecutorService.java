@@ -1,14 +1,38 @@
 package com.collabcode.executor_js;
 
-
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class JsExecutorService {
+
+    private final ExecutionScheduler scheduler;
+
+    public JsExecutorService(ExecutionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public String execute(String code) throws IOException, InterruptedException {
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
+
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
+
+    /* ---------- internals ---------- */
+
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
         Path tempDir = Files.createTempDirectory("js-code");
         File script = new File(tempDir.toFile(), "script.js");
 
@@ -16,9 +40,6 @@ public class JsExecutorService {
             writer.write(code);
         }
 
-        Process process = new ProcessBuilder("node", script.getAbsolutePath()).redirectErrorStream(true).start();
-        String output = new String(process.getInputStream().readAllBytes());
-        process.waitFor();
-        return output;
+        return scheduler.exec(List.of("node", script.getAbsolutePath()), tempDir, sink);
     }
 }
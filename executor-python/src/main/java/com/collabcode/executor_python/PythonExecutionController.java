@@ -1,7 +1,13 @@
 package com.collabcode.executor_python;
 
+import com.collabcode.executor_common.ExecutionRejectedException;
+import com.collabcode.executor_common.OutputEvents;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/execute/python")
@@ -13,4 +19,17 @@ public class PythonExecutionController {
     public String run(@RequestBody String code) throws Exception {
         return service.execute(code);
     }
-}
\ No newline at end of file
+
+    /** Output as server-sent events: "output" events of {text}, then one "exit" event of {exitCode}. */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestBody String code) {
+        SseEmitter emitter = new SseEmitter(0L);
+        service.stream(code, OutputEvents.sink(emitter)).whenComplete(OutputEvents.finish(emitter));
+        return emitter;
+    }
+
+    @ExceptionHandler(ExecutionRejectedException.class)
+    public ResponseEntity<String> busy(ExecutionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").body(e.getMessage());
+    }
+}
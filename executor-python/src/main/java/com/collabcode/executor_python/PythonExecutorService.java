@@ -1,13 +1,38 @@
 package com.collabcode.executor_python;
 
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class PythonExecutorService {
+
+    private final ExecutionScheduler scheduler;
+
+    public PythonExecutorService(ExecutionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public String execute(String code) throws IOException, InterruptedException {
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
+
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
+
+    /* ---------- internals ---------- */
+
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
         Path tempDir = Files.createTempDirectory("python-code");
         File script = new File(tempDir.toFile(), "script.py");
 
@@ -15,11 +40,6 @@ public class PythonExecutorService {
             writer.write(code);
         }
 
-        ProcessBuilder pb = new ProcessBuilder("python3", script.getAbsolutePath());
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-        String result = new String(process.getInputStream().readAllBytes());
-        process.waitFor();
-        return result;
+        return scheduler.exec(List.of("python3", script.getAbsolutePath()), tempDir, sink);
     }
 }
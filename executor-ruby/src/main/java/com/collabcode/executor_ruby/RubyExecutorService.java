@@ -1,14 +1,38 @@
 package com.collabcode.executor_ruby;
 
-
+import com.collabcode.executor_common.ExecutionScheduler;
 import org.springframework.stereotype.Service;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class RubyExecutorService {
+
+    private final ExecutionScheduler scheduler;
+
+    public RubyExecutorService(ExecutionScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public String execute(String code) throws IOException, InterruptedException {
+        return scheduler.submit(() -> {
+            StringBuilder output = new StringBuilder();
+            run(code, output::append);
+            return output.toString();
+        });
+    }
+
+    /** Queues a run whose output goes to sink as the program writes it; completes with its exit status. */
+    public CompletableFuture<Integer> stream(String code, ExecutionScheduler.Sink sink) {
+        return scheduler.start(() -> run(code, sink));
+    }
+
+    /* ---------- internals ---------- */
+
+    private int run(String code, ExecutionScheduler.Sink sink) throws IOException, InterruptedException {
         Path tempDir = Files.createTempDirectory("ruby-code");
         File script = new File(tempDir.toFile(), "script.rb");
 
@@ -16,9 +40,6 @@ public class RubyExecutorService {
             writer.write(code);
         }
 
-        Process process = new ProcessBuilder("ruby", script.getAbsolutePath()).redirectErrorStream(true).start();
-        String output = new String(process.getInputStream().readAllBytes());
-        process.waitFor();
-        return output;
+        return scheduler.exec(List.of("ruby", script.getAbsolutePath()), tempDir, sink);
     }
 }
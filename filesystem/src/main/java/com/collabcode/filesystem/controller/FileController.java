@@ -2,16 +2,25 @@ package com.collabcode.filesystem.controller;
 
 import com.collabcode.filesystem.entity.Snapshot;
 import com.collabcode.filesystem.repository.SnapshotRepository;
+import com.collabcode.filesystem.service.SnapshotHeadIndex;
+import com.collabcode.filesystem.service.SnapshotStore;
+import com.collabcode.filesystem.service.StorageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
 import java.time.LocalDateTime;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Stream;
 
 /**
  * Filesystem façade. All filenames are given *relative* to baseDir,
@@ -24,9 +33,16 @@ public class FileController {
     private String baseDir;
 
     private final SnapshotRepository snapshots;
+    private final SnapshotStore store;
+    private final SnapshotHeadIndex heads;
+    private final ObjectMapper mapper;
 
-    public FileController(SnapshotRepository snapshots) {
+    public FileController(SnapshotRepository snapshots, SnapshotStore store,
+                          SnapshotHeadIndex heads, ObjectMapper mapper) {
         this.snapshots = snapshots;
+        this.store     = store;
+        this.heads     = heads;
+        this.mapper    = mapper;
     }
 
     /**
@@ -51,19 +67,20 @@ public class FileController {
             Objects.requireNonNull(req.author,   "author is null");
             Objects.requireNonNull(req.summary,  "summary is null");
 
-            Path filePath = Paths.get(baseDir).resolve(req.filename);
-            Files.createDirectories(filePath.getParent());
-            Files.writeString(
-                filePath, req.content,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
-            );
+            Path filePath = underBaseDir(req.filename);
+            String contentHash = heads.update(filePath.getParent(), () -> {
+                Path previous = heads.latest(filePath.getParent());
+                String hash = store.write(filePath, req.content, previous);
+                heads.advance(filePath, hash);
+                return hash;
+            });
 
             snapshots.save(new Snapshot(
                 req.fileId,
                 req.author,
                 LocalDateTime.now(),
-                req.summary
+                req.summary,
+                contentHash
             ));
 
             rsp.message = "saved -> " + req.filename;
@@ -74,6 +91,45 @@ public class FileController {
         return rsp;
     }
 
+    /**
+     * POST /link
+     * Creates a snapshot with the same content as an existing one (source,
+     * relative to baseDir) without copying its body; used by forks and merges.
+     */
+    @PostMapping("/link")
+    public FileSystemResponse linkFile(@RequestBody LinkRequest req) {
+        FileSystemResponse rsp = new FileSystemResponse();
+        try {
+            Objects.requireNonNull(req.fileId,   "fileId is null");
+            Objects.requireNonNull(req.filename, "filename is null");
+            Objects.requireNonNull(req.source,   "source is null");
+            Objects.requireNonNull(req.author,   "author is null");
+            Objects.requireNonNull(req.summary,  "summary is null");
+
+            Path source   = underBaseDir(req.source);
+            Path filePath = underBaseDir(req.filename);
+            String contentHash = heads.update(filePath.getParent(), () -> {
+                String hash = store.link(source, filePath);
+                heads.advance(filePath, hash);
+                return hash;
+            });
+
+            snapshots.save(new Snapshot(
+                req.fileId,
+                req.author,
+                LocalDateTime.now(),
+                req.summary,
+                contentHash
+            ));
+
+            rsp.message = "linked -> " + req.filename;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            rsp.message = "ERROR: " + ex.getMessage();
+        }
+        return rsp;
+    }
+
     /* ───────────────────────────── READ ────────────────────────────── */
 
     @GetMapping("/read")
@@ -82,7 +138,7 @@ public class FileController {
             Path p = Paths.get(baseDir).resolve(filename);
             if (!Files.exists(p))
                 return ResponseEntity.status(404).body("File not found: " + filename);
-            return ResponseEntity.ok(Files.readString(p));
+            return ResponseEntity.ok(store.readString(p));
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Read error: " + e.getMessage());
         }
@@ -93,25 +149,145 @@ public class FileController {
     @GetMapping("/latest")
     public ResponseEntity<LatestResponse> latest(@RequestParam Long projectId,
                                                  @RequestParam String fileDir) {
-        Path dir = Paths.get(baseDir, String.valueOf(projectId), fileDir);
-        if (!Files.exists(dir)) return ResponseEntity.status(404).build();
-
-        try (Stream<Path> stream = Files.list(dir)) {
-            Path latest = stream
-                .filter(Files::isRegularFile)
-                .max(Comparator.comparing(p -> p.getFileName().toString()))
-                .orElse(null);
-            if (latest == null) return ResponseEntity.status(404).build();
+        try {
+            SnapshotHeadIndex.Head head = latestHead(projectId, fileDir);
+            if (head == null) return ResponseEntity.status(404).build();
+
+            LatestResponse res = new LatestResponse();
+            res.snapshotName = projectId + "/" + fileDir + "/" + head.snapshot().getFileName();
+            res.content      = store.readString(head.snapshot());
+            res.contentHash  = head.contentHash();
+            return ResponseEntity.ok(res);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    /**
+     * GET /latest/hash?projectId=<id>&fileDir=<dir>
+     * Name and SHA-256 of the newest snapshot, without its content, so callers
+     * can tell whether their copy is current without downloading the file.
+     */
+    @GetMapping("/latest/hash")
+    public ResponseEntity<LatestResponse> latestHash(@RequestParam Long projectId,
+                                                     @RequestParam String fileDir) {
+        try {
+            SnapshotHeadIndex.Head head = latestHead(projectId, fileDir);
+            if (head == null) return ResponseEntity.status(404).build();
 
             LatestResponse res = new LatestResponse();
-            res.snapshotName = projectId + "/" + fileDir + "/" + latest.getFileName();
-            res.content      = Files.readString(latest);
+            res.snapshotName = projectId + "/" + fileDir + "/" + head.snapshot().getFileName();
+            res.contentHash  = head.contentHash();
             return ResponseEntity.ok(res);
         } catch (Exception e) {
             return ResponseEntity.status(500).build();
         }
     }
 
+    /**
+     * GET /latest/raw?projectId=<id>&fileDir=<dir>
+     * Bytes of the newest snapshot, streamed from disk instead of wrapped in JSON.
+     * A client sending Accept-Encoding: deflate gets a snapshot stored deflated
+     * as-is, with Content-Encoding: deflate, instead of decompressed bytes.
+     */
+    @GetMapping("/latest/raw")
+    public ResponseEntity<Resource> latestRaw(@RequestParam Long projectId,
+                                              @RequestParam String fileDir,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                              String acceptEncoding) {
+        try {
+            Path latest = latestSnapshot(projectId, fileDir);
+            if (latest == null) return ResponseEntity.status(404).build();
+
+            InputStream encoded = accepts(acceptEncoding, StorageCodec.DEFLATE)
+                ? store.openEncoded(latest, StorageCodec.DEFLATE)
+                : null;
+            if (encoded != null) {
+                return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header(HttpHeaders.CONTENT_ENCODING, StorageCodec.DEFLATE.getName())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(new InputStreamResource(encoded));
+            }
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(new InputStreamResource(store.open(latest)));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    /**
+     * POST /latest/batch
+     * Latest snapshot of every fileDir in one project, written as one JSON
+     * object per line (NDJSON) while the files are read, so a large project is
+     * never held in memory as a whole. A fileDir without snapshots has no
+     * snapshotName; a fileDir that failed to read carries an error instead.
+     * With includeContent=false only names and hashes are sent.
+     */
+    @PostMapping(value = "/latest/batch", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> latestBatch(@RequestBody LatestBatchRequest req) {
+        if (req.projectId == null || req.fileDirs == null)
+            return ResponseEntity.badRequest().build();
+
+        boolean includeContent = req.includeContent == null || req.includeContent;
+        StreamingResponseBody body = out -> {
+            for (String fileDir : req.fileDirs) {
+                LatestBatchEntry entry = new LatestBatchEntry();
+                entry.fileDir = fileDir;
+                try {
+                    SnapshotHeadIndex.Head head = latestHead(req.projectId, fileDir);
+                    if (head != null) {
+                        entry.snapshotName = req.projectId + "/" + fileDir + "/" + head.snapshot().getFileName();
+                        entry.content      = includeContent ? store.readString(head.snapshot()) : null;
+                        entry.contentHash  = head.contentHash();
+                    }
+                } catch (Exception e) {
+                    entry.error = e.getMessage();
+                }
+                out.write(mapper.writeValueAsBytes(entry));
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+
+    /** Whether an Accept-Encoding header lists the codec without ruling it out (q=0). */
+    private static boolean accepts(String acceptEncoding, StorageCodec codec) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            if (!params[0].trim().equalsIgnoreCase(codec.getName())) continue;
+            for (int i = 1; i < params.length; i++) {
+                if (params[i].replace(" ", "").matches("q=0(\\.0*)?")) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Resolves a path relative to baseDir, refusing one that escapes it (e.g. through ".."). */
+    private Path underBaseDir(String relative) {
+        Path base = Paths.get(baseDir).normalize();
+        Path path = base.resolve(relative).normalize();
+        if (!path.startsWith(base) || path.equals(base))
+            throw new IllegalArgumentException("path outside the base directory: " + relative);
+        return path;
+    }
+
+    /** Newest snapshot file in projectId/fileDir, or null if there is none. */
+    private Path latestSnapshot(Long projectId, String fileDir) throws IOException {
+        return heads.latest(Paths.get(baseDir, String.valueOf(projectId), fileDir));
+    }
+
+    /** Newest snapshot in projectId/fileDir with its content hash, or null if there is none. */
+    private SnapshotHeadIndex.Head latestHead(Long projectId, String fileDir) throws IOException {
+        return heads.latestWithHash(Paths.get(baseDir, String.valueOf(projectId), fileDir));
+    }
+
     /* ─────────────────────────── project helpers ──────────────────── */
 
     @PostMapping("/project/{projectId}")
@@ -128,16 +304,64 @@ public class FileController {
     public ResponseEntity<String> deleteProject(@PathVariable String projectId) {
         try {
             Path p = Paths.get(baseDir, projectId);
-            if (Files.exists(p))
-                Files.walk(p)
-                     .sorted(Comparator.reverseOrder())
-                     .forEach(f -> f.toFile().delete());
+            if (Files.exists(p)) {
+                store.delete(p);
+                store.collectGarbage();
+            }
             return ResponseEntity.ok("project deleted");
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Error: " + e.getMessage());
         }
     }
 
+    /**
+     * DELETE /file?projectId=<id>&fileDir=<dir>
+     * Deletes a file's snapshots and frees the blobs only they referenced.
+     */
+    @DeleteMapping("/file")
+    public ResponseEntity<String> deleteFile(@RequestParam Long projectId,
+                                             @RequestParam String fileDir) {
+        try {
+            Path dir = underBaseDir(projectId + "/" + fileDir);
+            if (Paths.get(baseDir).normalize().relativize(dir).getNameCount() != 2)
+                return ResponseEntity.badRequest().body("Error: not a file directory: " + fileDir);
+            heads.update(dir, () -> {
+                store.delete(dir);
+                return null;
+            });
+            store.collectGarbage();
+            return ResponseEntity.ok("file deleted");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * POST /heads/rebuild
+     * Recomputes every fileDir's head pointer from the snapshots on disk.
+     */
+    @PostMapping("/heads/rebuild")
+    public ResponseEntity<String> rebuildHeads() {
+        try {
+            return ResponseEntity.ok("rebuilt " + heads.rebuildAll() + " heads");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * POST /blobs/gc
+     * Deletes every blob that no snapshot references any more.
+     */
+    @PostMapping("/blobs/gc")
+    public ResponseEntity<String> collectGarbage() {
+        try {
+            return ResponseEntity.ok("deleted " + store.collectGarbage() + " blobs");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error: " + e.getMessage());
+        }
+    }
+
     @PostMapping("/create-folder")
     public ResponseEntity<String> createFolder(@RequestParam Long projectId,
                                                @RequestParam String folderName) {
@@ -161,6 +385,14 @@ public class FileController {
         public String summary;
     }
 
+    public static class LinkRequest {
+        public String fileId;
+        public String filename;
+        public String source;
+        public String author;
+        public String summary;
+    }
+
     public static class FileSystemResponse {
         public String message;
     }
@@ -168,5 +400,20 @@ public class FileController {
     public static class LatestResponse {
         public String snapshotName;
         public String content;
+        public String contentHash;
+    }
+
+    public static class LatestBatchRequest {
+        public Long projectId;
+        public List<String> fileDirs;
+        public Boolean includeContent;
+    }
+
+    public static class LatestBatchEntry {
+        public String fileDir;
+        public String snapshotName;
+        public String content;
+        public String contentHash;
+        public String error;
     }
 }
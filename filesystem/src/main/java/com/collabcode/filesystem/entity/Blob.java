@@ -0,0 +1,47 @@
+package com.collabcode.filesystem.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * One unique snapshot body in the content-addressed blob area, with the
+ * number of snapshot files that reference it.
+ */
+@Entity
+@Table(name = "blobs", indexes = @Index(name = "idx_blobs_ref_count", columnList = "refCount"))
+public class Blob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    private long refCount;
+    private long size;
+
+    public Blob() {}
+
+    public Blob(String hash, long refCount, long size) {
+        this.hash = hash;
+        this.refCount = refCount;
+        this.size = size;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(long refCount) {
+        this.refCount = refCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+}
@@ -18,6 +18,9 @@ public class Snapshot {
     @Column(length = 2000)
     private String summary;
 
+    @Column(length = 64)
+    private String contentHash;
+
     public Snapshot() {}
 
     public Snapshot(String filename, String author, LocalDateTime timestamp, String summary) {
@@ -27,6 +30,11 @@ public class Snapshot {
         this.summary = summary;
     }
 
+    public Snapshot(String filename, String author, LocalDateTime timestamp, String summary, String contentHash) {
+        this(filename, author, timestamp, summary);
+        this.contentHash = contentHash;
+    }
+
     public Long getId() {
         return id;
     }
@@ -62,4 +70,12 @@ public class Snapshot {
     public void setSummary(String summary) {
         this.summary = summary;
     }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
 }
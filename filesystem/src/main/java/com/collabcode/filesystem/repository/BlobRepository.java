@@ -0,0 +1,25 @@
+package com.collabcode.filesystem.repository;
+
+import com.collabcode.filesystem.entity.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Reference counts of content-addressed blobs. Counts are adjusted in place
+ * so concurrent snapshots of the same content never overwrite each other.
+ */
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    /** @return The number of rows updated, 0 if the blob has no row yet. */
+    @Transactional
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + :delta where b.hash = :hash")
+    int adjustRefCount(@Param("hash") String hash, @Param("delta") long delta);
+
+    List<Blob> findByRefCountLessThanEqual(long refCount);
+}
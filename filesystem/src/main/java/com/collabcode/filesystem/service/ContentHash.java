@@ -0,0 +1,28 @@
+package com.collabcode.filesystem.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 digest of snapshot content, as lowercase hex. The server and the
+ * filesystem service both hash the UTF-8 bytes, so digests can be compared
+ * across them instead of the content itself.
+ */
+public final class ContentHash {
+
+    private ContentHash() { }
+
+    public static String sha256(String content) {
+        return sha256(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.collabcode.filesystem.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds every snapshot head from disk on startup when
+ * filesystem.rebuild-heads-on-startup=true, e.g. after a crash or after
+ * restoring the data volume from a backup.
+ */
+@Component
+@ConditionalOnProperty(name = "filesystem.rebuild-heads-on-startup", havingValue = "true")
+public class HeadIndexRebuildRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeadIndexRebuildRunner.class);
+
+    private final SnapshotHeadIndex heads;
+
+    public HeadIndexRebuildRunner(SnapshotHeadIndex heads) {
+        this.heads = heads;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int rebuilt = heads.rebuildAll();
+        logger.info("Rebuilt {} snapshot heads", rebuilt);
+    }
+}
@@ -0,0 +1,105 @@
+package com.collabcode.filesystem.service;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.Chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line-based delta between two versions of a text file.
+ *
+ * A delta is a sequence of operations on the lines of the base version, each
+ * starting with a header line:
+ * <pre>
+ *   =n        copy the next n lines of the base
+ *   -n        skip the next n lines of the base
+ *   +b        insert the b bytes (UTF-8) that follow the header
+ * </pre>
+ * Lines keep their terminators, so applying a delta reproduces the target
+ * exactly, including a missing newline at the end of the file.
+ */
+public final class LineDelta {
+
+    private LineDelta() { }
+
+    public static byte[] diff(String base, String target) {
+        List<String> baseLines   = lines(base);
+        List<String> targetLines = lines(target);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        for (AbstractDelta<String> delta : DiffUtils.diff(baseLines, targetLines).getDeltas()) {
+            Chunk<String> source = delta.getSource();
+            if (source.getPosition() > pos) op(out, '=', source.getPosition() - pos);
+            if (source.size() > 0) op(out, '-', source.size());
+            if (!delta.getTarget().getLines().isEmpty()) {
+                byte[] inserted = String.join("", delta.getTarget().getLines()).getBytes(StandardCharsets.UTF_8);
+                op(out, '+', inserted.length);
+                out.writeBytes(inserted);
+            }
+            pos = source.getPosition() + source.size();
+        }
+        if (pos < baseLines.size()) op(out, '=', baseLines.size() - pos);
+        return out.toByteArray();
+    }
+
+    public static String apply(String base, byte[] delta) {
+        return String.join("", apply(lines(base), delta));
+    }
+
+    /**
+     * Applies a delta to already split lines, so a chain of deltas can be
+     * applied without joining and re-splitting the text at every step.
+     */
+    public static List<String> apply(List<String> baseLines, byte[] delta) {
+        List<String> out = new ArrayList<>(baseLines.size() + 16);
+        int line = 0;
+        int i = 0;
+        while (i < delta.length) {
+            int opStart = i;
+            byte type = delta[i++];
+            int n = 0;
+            while (delta[i] != '\n') n = n * 10 + (delta[i++] - '0');
+            i++;
+            switch (type) {
+                case '=' -> {
+                    out.addAll(baseLines.subList(line, line + n));
+                    line += n;
+                }
+                case '-' -> line += n;
+                case '+' -> {
+                    out.addAll(lines(new String(delta, i, n, StandardCharsets.UTF_8)));
+                    i += n;
+                }
+                default -> throw new IllegalArgumentException("corrupt delta at byte " + opStart);
+            }
+        }
+        return out;
+    }
+
+    /** Splits text after every '\n', keeping the terminators. */
+    public static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) lines.add(text.substring(start));
+        return lines;
+    }
+
+    /* ---------- internals ---------- */
+
+    private static void op(ByteArrayOutputStream out, char type, int n) {
+        out.write(type);
+        out.writeBytes(Integer.toString(n).getBytes(StandardCharsets.US_ASCII));
+        out.write('\n');
+    }
+}
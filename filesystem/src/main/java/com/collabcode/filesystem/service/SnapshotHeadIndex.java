@@ -0,0 +1,212 @@
+package com.collabcode.filesystem.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Per-fileDir pointer to the newest snapshot, kept in a small ".head" file next
+ * to the snapshots. /save advances it with an atomic rename, so /latest can
+ * resolve the newest snapshot without listing and sorting the directory.
+ * The head also records the snapshot's content hash on its second line.
+ *
+ * Writers of a fileDir's snapshots go through {@link #update}, which runs
+ * one at a time per fileDir, so a new snapshot is always based on the head
+ * the previous writer left.
+ *
+ * A head that is missing or names a deleted snapshot is rebuilt from the
+ * directory listing on read. A head left on an older snapshot that still
+ * exists (e.g. after a crash between writing a snapshot and its head) looks
+ * valid on read, and is only corrected by {@link #rebuildAll()}, which
+ * {@link HeadIndexRebuildRunner} can run on startup.
+ */
+@Component
+public class SnapshotHeadIndex {
+
+    static final String HEAD_FILE = ".head";
+
+    private final Path baseDir;
+    private final SnapshotStore store;
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    public SnapshotHeadIndex(@Value("${filesystem.base-dir}") String baseDir, SnapshotStore store) {
+        this.baseDir = Paths.get(baseDir);
+        this.store   = store;
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+    }
+
+    /** Newest snapshot of a fileDir and the SHA-256 of its content. */
+    public record Head(Path snapshot, String contentHash) { }
+
+    /** A change to a fileDir's snapshots and head. */
+    public interface Update<T> {
+        T apply() throws IOException;
+    }
+
+    /**
+     * Runs an update of a fileDir, such as reading its head, writing a
+     * snapshot based on it and advancing the head, while no other update of
+     * the same fileDir runs.
+     */
+    public <T> T update(Path dir, Update<T> update) throws IOException {
+        ReentrantLock lock = lockFor(dir);
+        lock.lock();
+        try {
+            return update.apply();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Newest snapshot in a fileDir.
+     *
+     * @return The snapshot path, or null if the directory has no snapshots.
+     */
+    public Path latest(Path dir) throws IOException {
+        Head head = head(dir);
+        return head == null ? null : head.snapshot();
+    }
+
+    /**
+     * Newest snapshot in a fileDir together with its content hash. Heads
+     * written before hashes were recorded get theirs computed once here.
+     *
+     * @return The head, or null if the directory has no snapshots.
+     */
+    public Head latestWithHash(Path dir) throws IOException {
+        Head head = head(dir);
+        if (head == null || head.contentHash() != null) return head;
+
+        String hash = store.hashOf(head.snapshot());
+        advance(head.snapshot(), hash);
+        return new Head(head.snapshot(), hash);
+    }
+
+    /**
+     * Points the head of the snapshot's directory at it, unless the head
+     * already names a newer snapshot.
+     */
+    public void advance(Path snapshot, String contentHash) throws IOException {
+        Path dir = snapshot.getParent();
+        String name = snapshot.getFileName().toString();
+        ReentrantLock lock = lockFor(dir);
+        lock.lock();
+        try {
+            String[] current = readHead(dir);
+            if (current == null || name.compareTo(current[0]) >= 0) {
+                writeHead(dir, name, contentHash);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recomputes the head of a single fileDir from its directory listing.
+     *
+     * @return The newest snapshot, or null if there is none.
+     */
+    public Path rebuild(Path dir) throws IOException {
+        ReentrantLock lock = lockFor(dir);
+        lock.lock();
+        try {
+            Path newest = scan(dir);
+            if (newest != null) {
+                writeHead(dir, newest.getFileName().toString(), store.hashOf(newest));
+            } else {
+                Files.deleteIfExists(dir.resolve(HEAD_FILE));
+            }
+            return newest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recomputes the head of every fileDir (baseDir/projectId/fileDir) from disk.
+     *
+     * @return The number of fileDirs that have a head afterwards.
+     */
+    public int rebuildAll() throws IOException {
+        if (!Files.isDirectory(baseDir)) return 0;
+
+        int rebuilt = 0;
+        try (Stream<Path> projects = Files.list(baseDir)) {
+            List<Path> projectDirs = projects
+                .filter(Files::isDirectory)
+                .filter(p -> !p.getFileName().toString().startsWith("."))
+                .toList();
+            for (Path project : projectDirs) {
+                List<Path> fileDirs;
+                try (Stream<Path> dirs = Files.list(project)) {
+                    fileDirs = dirs.filter(Files::isDirectory).toList();
+                }
+                for (Path dir : fileDirs) {
+                    if (rebuild(dir) != null) rebuilt++;
+                }
+            }
+        }
+        return rebuilt;
+    }
+
+    /* ---------- internals ---------- */
+
+    private Head head(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return null;
+
+        String[] head = readHead(dir);
+        if (head != null) {
+            Path snapshot = dir.resolve(head[0]);
+            if (Files.isRegularFile(snapshot)) return new Head(snapshot, head[1]);
+        }
+        Path rebuilt = rebuild(dir);
+        if (rebuilt == null) return null;
+        String[] fresh = readHead(dir);
+        return new Head(rebuilt, fresh != null ? fresh[1] : null);
+    }
+
+    private static Path scan(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return null;
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream
+                .filter(p -> !p.getFileName().toString().startsWith("."))
+                .filter(Files::isRegularFile)
+                .max(Comparator.comparing(p -> p.getFileName().toString()))
+                .orElse(null);
+        }
+    }
+
+    /** @return {snapshot name, content hash or null}, or null if there is no head. */
+    private static String[] readHead(Path dir) throws IOException {
+        Path head = dir.resolve(HEAD_FILE);
+        if (!Files.isRegularFile(head)) return null;
+        String[] lines = Files.readString(head, StandardCharsets.UTF_8).trim().split("\n");
+        if (lines[0].isBlank()) return null;
+        String hash = lines.length > 1 && !lines[1].isBlank() ? lines[1].trim() : null;
+        return new String[] { lines[0].trim(), hash };
+    }
+
+    private static void writeHead(Path dir, String name, String contentHash) throws IOException {
+        Path tmp = Files.createTempFile(dir, HEAD_FILE, ".tmp");
+        try {
+            Files.writeString(tmp, contentHash == null ? name : name + "\n" + contentHash,
+                              StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(HEAD_FILE),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private ReentrantLock lockFor(Path dir) {
+        return locks[Math.floorMod(dir.toAbsolutePath().normalize().hashCode(), locks.length)];
+    }
+}
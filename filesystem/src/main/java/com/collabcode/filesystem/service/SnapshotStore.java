@@ -0,0 +1,406 @@
+package com.collabcode.filesystem.service;
+
+import com.collabcode.filesystem.entity.Blob;
+import com.collabcode.filesystem.repository.BlobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage of snapshot bodies.
+ *
+ * Each unique body is written once to baseDir/.blobs/ab/abcd… (named by its
+ * SHA-256). The snapshot file at projectId/fileDir/snapshotName only holds a
+ * one-line reference to that blob, so identical saves and forked files share
+ * one copy on disk. Snapshot files written before the blob store existed hold
+ * the content itself and are still read as-is.
+ *
+ * A new blob is stored as a {@link LineDelta} against the blob of the file's
+ * previous version, unless the delta would not save much or the base chain
+ * has reached filesystem.storage.keyframe-interval, in which case the full
+ * content is stored as a keyframe. Reading a version therefore applies at most
+ * keyframeInterval - 1 deltas. A delta blob starts with
+ * "\0delta:&lt;baseHash&gt;:&lt;depth&gt;\n"; keyframes are stored as-is. Either is
+ * then encoded with the {@link StorageCodec} set by filesystem.storage.codec.
+ *
+ * Every reference file, and every delta blob built on a base, counts towards
+ * that blob's refCount in the blobs table. Deleting a project releases its
+ * references, and {@link #collectGarbage()} removes blobs that nothing
+ * references any more.
+ */
+@Component
+public class SnapshotStore {
+
+    static final String BLOB_DIR = ".blobs";
+    private static final byte[] REF_MAGIC = "\0ref:sha256:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DELTA_MAGIC = "\0delta:".getBytes(StandardCharsets.US_ASCII);
+    private static final int HASH_LENGTH = 64;
+
+    private final Path blobDir;
+    private final int keyframeInterval;
+    private final StorageCodec codec;
+    private final BlobRepository blobs;
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    public SnapshotStore(@Value("${filesystem.base-dir}") String baseDir,
+                         @Value("${filesystem.storage.keyframe-interval:16}") int keyframeInterval,
+                         @Value("${filesystem.storage.codec:none}") String codec,
+                         BlobRepository blobs) {
+        this.blobDir          = Paths.get(baseDir, BLOB_DIR);
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.codec            = StorageCodec.fromName(codec);
+        this.blobs            = blobs;
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Stores a snapshot body, reusing the blob if the same content exists.
+     *
+     * @param previous The file's previous snapshot, used as the delta base; may be null.
+     * @return The content hash.
+     */
+    public String write(Path snapshot, String content, Path previous) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String hash = ContentHash.sha256(bytes);
+        if (!retainExisting(hash)) {
+            String baseHash = previous != null && Files.isRegularFile(previous) ? refHash(previous) : null;
+            storeNew(hash, content, bytes, baseHash);
+        }
+        replaceRef(snapshot, hash);
+        return hash;
+    }
+
+    /**
+     * Makes target a snapshot with the same content as source without copying
+     * the body. A source written before the blob store existed is moved into
+     * it on the way.
+     *
+     * @return The content hash.
+     */
+    public String link(Path source, Path target) throws IOException {
+        String hash = refHash(source);
+        if (hash == null) {
+            byte[] bytes = Files.readAllBytes(source);
+            hash = ContentHash.sha256(bytes);
+            retain(hash, bytes);
+        } else {
+            retain(hash, null);
+        }
+        replaceRef(target, hash);
+        return hash;
+    }
+
+    public byte[] readAllBytes(Path snapshot) throws IOException {
+        String hash = refHash(snapshot);
+        return hash == null ? Files.readAllBytes(snapshot) : readBlob(hash);
+    }
+
+    public String readString(Path snapshot) throws IOException {
+        return new String(readAllBytes(snapshot), StandardCharsets.UTF_8);
+    }
+
+    /** Opens the snapshot body as a stream; the caller must close it. */
+    public InputStream open(Path snapshot) throws IOException {
+        String hash = refHash(snapshot);
+        if (hash == null) return Files.newInputStream(snapshot);
+        Path blob = blobPath(hash);
+        if (deltaBase(blob) == null) return StorageCodec.decode(Files.newInputStream(blob));
+        return new ByteArrayInputStream(readBlob(hash));
+    }
+
+    /**
+     * Opens the snapshot body as stored, still encoded with the given codec,
+     * so it can be sent to a client that accepts that encoding as-is.
+     *
+     * @return The encoded body, or null if the snapshot is not a keyframe
+     *         stored with that codec; the caller must close the stream.
+     */
+    public InputStream openEncoded(Path snapshot, StorageCodec wanted) throws IOException {
+        String hash = refHash(snapshot);
+        if (hash == null || deltaBase(blobPath(hash)) != null) return null;
+        return wanted.openEncoded(Files.newInputStream(blobPath(hash)));
+    }
+
+    /** SHA-256 of the snapshot body, read from the reference when there is one. */
+    public String hashOf(Path snapshot) throws IOException {
+        String hash = refHash(snapshot);
+        return hash != null ? hash : ContentHash.sha256(Files.readAllBytes(snapshot));
+    }
+
+    /**
+     * Drops the blob references of every snapshot under dir, e.g. before the
+     * directory of a deleted project is removed.
+     */
+    public void release(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile)
+                        .filter(p -> !p.getFileName().toString().startsWith("."))
+                        .toList();
+        }
+        for (Path file : files) {
+            String hash = refHash(file);
+            if (hash != null) release(hash);
+        }
+    }
+
+    /**
+     * Deletes a directory of snapshots, a fileDir or a whole project, after
+     * dropping their blob references. Blobs nothing else references are
+     * deleted by the next {@link #collectGarbage()}.
+     */
+    public void delete(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+
+        release(dir);
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) Files.deleteIfExists(path);
+    }
+
+    /**
+     * Deletes every blob that no snapshot or delta references. Deleting a
+     * delta releases its base, which is then collected in the next pass.
+     *
+     * @return The number of blobs deleted.
+     */
+    public int collectGarbage() throws IOException {
+        int deleted = 0;
+        int pass;
+        do {
+            pass = 0;
+            for (Blob candidate : blobs.findByRefCountLessThanEqual(0)) {
+                String hash = candidate.getHash();
+                String base = null;
+                ReentrantLock lock = lockFor(hash);
+                lock.lock();
+                try {
+                    // re-check under the lock: a save may have picked the blob up again
+                    Blob current = blobs.findById(hash).orElse(null);
+                    if (current == null || current.getRefCount() > 0) continue;
+                    Path blob = blobPath(hash);
+                    if (Files.exists(blob)) base = deltaBase(blob);
+                    Files.deleteIfExists(blob);
+                    blobs.delete(current);
+                    pass++;
+                } finally {
+                    lock.unlock();
+                }
+                if (base != null) release(base);
+            }
+            deleted += pass;
+        } while (pass > 0);
+        return deleted;
+    }
+
+    /* ---------- internals ---------- */
+
+    /**
+     * Writes a blob that does not exist yet, as a delta against baseHash when
+     * that is worthwhile, else as a keyframe.
+     */
+    private void storeNew(String hash, String content, byte[] bytes, String baseHash) throws IOException {
+        if (baseHash == null || keyframeInterval == 1 || !retainExisting(baseHash)) {
+            retain(hash, bytes);
+            return;
+        }
+        // the reference taken above pins the base while we diff against it and,
+        // if the delta is kept, becomes the delta's reference to its base
+        boolean baseUsed = false;
+        try {
+            int depth = depth(blobPath(baseHash)) + 1;
+            if (depth < keyframeInterval) {
+                byte[] patch = LineDelta.diff(new String(readBlob(baseHash), StandardCharsets.UTF_8), content);
+                if (patch.length < bytes.length / 2) {
+                    byte[] header = (new String(DELTA_MAGIC, StandardCharsets.US_ASCII)
+                                     + baseHash + ":" + depth + "\n").getBytes(StandardCharsets.US_ASCII);
+                    byte[] body = Arrays.copyOf(header, header.length + patch.length);
+                    System.arraycopy(patch, 0, body, header.length, patch.length);
+                    // another save may have written the same content meanwhile
+                    baseUsed = retain(hash, body);
+                    return;
+                }
+            }
+            retain(hash, bytes);
+        } finally {
+            if (!baseUsed) release(baseHash);
+        }
+    }
+
+    /**
+     * Reads a blob's full content, applying its delta chain down to the keyframe.
+     */
+    private byte[] readBlob(String hash) throws IOException {
+        Deque<byte[]> deltas = new ArrayDeque<>();
+        byte[] body = readStored(blobPath(hash));
+        int headerEnd;
+        while ((headerEnd = deltaHeaderEnd(body)) > 0) {
+            deltas.push(Arrays.copyOfRange(body, headerEnd + 1, body.length));
+            String base = new String(body, DELTA_MAGIC.length, HASH_LENGTH, StandardCharsets.US_ASCII);
+            body = readStored(blobPath(base));
+        }
+        if (deltas.isEmpty()) return body;
+
+        List<String> lines = LineDelta.lines(new String(body, StandardCharsets.UTF_8));
+        while (!deltas.isEmpty()) lines = LineDelta.apply(lines, deltas.pop());
+        return String.join("", lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Adds a reference to an existing blob. @return false if there is no such blob. */
+    private boolean retainExisting(String hash) throws IOException {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            if (!Files.exists(blobPath(hash))) return false;
+            if (blobs.adjustRefCount(hash, 1) == 0) {
+                blobs.save(new Blob(hash, 1, Files.size(blobPath(hash))));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a reference to a blob, writing it first if it does not exist.
+     * With bytes == null the blob must already exist.
+     *
+     * @return true if the blob was written by this call.
+     */
+    private boolean retain(String hash, byte[] bytes) throws IOException {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            Path blob = blobPath(hash);
+            boolean created = !Files.exists(blob);
+            if (created) {
+                if (bytes == null) throw new NoSuchFileException(blob.toString(), null, "blob missing");
+                Files.createDirectories(blob.getParent());
+                Path tmp = Files.createTempFile(blob.getParent(), ".blob", ".tmp");
+                try {
+                    Files.write(tmp, codec.encode(bytes));
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            if (blobs.adjustRefCount(hash, 1) == 0) {
+                blobs.save(new Blob(hash, 1, Files.size(blob)));
+            }
+            return created;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(String hash) {
+        ReentrantLock lock = lockFor(hash);
+        lock.lock();
+        try {
+            blobs.adjustRefCount(hash, -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Points a snapshot file at a blob, releasing the blob it referred to before, if any. */
+    private void replaceRef(Path snapshot, String hash) throws IOException {
+        String previous = Files.isRegularFile(snapshot) ? refHash(snapshot) : null;
+        writeRef(snapshot, hash);
+        if (previous != null) release(previous);
+    }
+
+    private static void writeRef(Path snapshot, String hash) throws IOException {
+        Files.createDirectories(snapshot.getParent());
+        byte[] ref = new byte[REF_MAGIC.length + HASH_LENGTH + 1];
+        System.arraycopy(REF_MAGIC, 0, ref, 0, REF_MAGIC.length);
+        System.arraycopy(hash.getBytes(StandardCharsets.US_ASCII), 0, ref, REF_MAGIC.length, HASH_LENGTH);
+        ref[ref.length - 1] = '\n';
+        // replaced in one step, so a reader or a crash never sees a truncated reference
+        Path tmp = Files.createTempFile(snapshot.getParent(), ".ref", ".tmp");
+        try {
+            Files.write(tmp, ref);
+            Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** @return The blob hash a snapshot file refers to, or null for a plain-content file. */
+    private static String refHash(Path snapshot) throws IOException {
+        byte[] head;
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            head = in.readNBytes(REF_MAGIC.length + HASH_LENGTH);
+        }
+        if (head.length < REF_MAGIC.length + HASH_LENGTH
+            || !Arrays.equals(head, 0, REF_MAGIC.length, REF_MAGIC, 0, REF_MAGIC.length)) {
+            return null;
+        }
+        return new String(head, REF_MAGIC.length, HASH_LENGTH, StandardCharsets.US_ASCII);
+    }
+
+    /** @return The base hash of a delta blob, or null for a keyframe. */
+    private static String deltaBase(Path blob) throws IOException {
+        byte[] head;
+        try (InputStream in = StorageCodec.decode(Files.newInputStream(blob))) {
+            head = in.readNBytes(DELTA_MAGIC.length + HASH_LENGTH + 1);
+        }
+        return isDelta(head) ? new String(head, DELTA_MAGIC.length, HASH_LENGTH, StandardCharsets.US_ASCII) : null;
+    }
+
+    /** @return The chain depth of a blob: 0 for a keyframe, base depth + 1 for a delta. */
+    private static int depth(Path blob) throws IOException {
+        byte[] head;
+        try (InputStream in = StorageCodec.decode(Files.newInputStream(blob))) {
+            head = in.readNBytes(DELTA_MAGIC.length + HASH_LENGTH + 12);
+        }
+        int end = deltaHeaderEnd(head);
+        if (end < 0) return 0;
+        int start = DELTA_MAGIC.length + HASH_LENGTH + 1;
+        return Integer.parseInt(new String(head, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] readStored(Path blob) throws IOException {
+        try (InputStream in = StorageCodec.decode(Files.newInputStream(blob))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static boolean isDelta(byte[] body) {
+        return body.length > DELTA_MAGIC.length + HASH_LENGTH
+            && Arrays.equals(body, 0, DELTA_MAGIC.length, DELTA_MAGIC, 0, DELTA_MAGIC.length);
+    }
+
+    /** @return The index of the '\n' ending a delta header, or -1 if body is a keyframe. */
+    private static int deltaHeaderEnd(byte[] body) {
+        if (!isDelta(body)) return -1;
+        for (int i = DELTA_MAGIC.length + HASH_LENGTH; i < body.length; i++) {
+            if (body[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private Path blobPath(String hash) {
+        return blobDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private ReentrantLock lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), locks.length)];
+    }
+}
@@ -0,0 +1,108 @@
+package com.collabcode.filesystem.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of blob files at rest, selected by filesystem.storage.codec.
+ *
+ * An encoded blob starts with "\0codec:&lt;name&gt;\n" followed by the encoded
+ * bytes; a blob without that header is plain and read as-is, so blobs written
+ * before compression was enabled, or with codec "none", keep working.
+ * "deflate" bodies are zlib streams, the format HTTP calls Content-Encoding:
+ * deflate, so they can be sent to clients without re-encoding.
+ */
+public enum StorageCodec {
+
+    NONE("none"),
+    DEFLATE("deflate");
+
+    private static final byte[] MAGIC = "\0codec:".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HEADER = MAGIC.length + 16;
+
+    private final String name;
+
+    StorageCodec(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static StorageCodec fromName(String name) {
+        for (StorageCodec codec : values()) {
+            if (codec.name.equals(name.trim().toLowerCase(Locale.ROOT))) return codec;
+        }
+        throw new IllegalArgumentException("unknown storage codec: " + name);
+    }
+
+    /** Encodes a blob body, header included. */
+    public byte[] encode(byte[] body) throws IOException {
+        if (this == NONE) return body;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 3 + MAX_HEADER);
+        out.writeBytes(header());
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wraps a stored blob so that it reads as the plain body, whatever codec
+     * it was written with.
+     */
+    public static InputStream decode(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored);
+        StorageCodec codec = readHeader(in);
+        return codec == DEFLATE ? new InflaterInputStream(in) : in;
+    }
+
+    /**
+     * Opens a stored blob as its encoded bytes, without the header.
+     *
+     * @return The encoded stream, or null (after closing stored) if the blob
+     *         was not written with this codec.
+     */
+    public InputStream openEncoded(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored);
+        if (this != NONE && readHeader(in) == this) return in;
+        in.close();
+        return null;
+    }
+
+    /* ---------- internals ---------- */
+
+    private byte[] header() {
+        byte[] name = this.name.getBytes(StandardCharsets.US_ASCII);
+        byte[] header = Arrays.copyOf(MAGIC, MAGIC.length + name.length + 1);
+        System.arraycopy(name, 0, header, MAGIC.length, name.length);
+        header[header.length - 1] = '\n';
+        return header;
+    }
+
+    /** Consumes the codec header if there is one. @return The codec, NONE for a plain blob. */
+    private static StorageCodec readHeader(BufferedInputStream in) throws IOException {
+        in.mark(MAX_HEADER);
+        byte[] head = in.readNBytes(MAX_HEADER);
+        in.reset();
+        if (head.length <= MAGIC.length || !Arrays.equals(head, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return NONE;
+        }
+        for (int i = MAGIC.length; i < head.length; i++) {
+            if (head[i] == '\n') {
+                in.skipNBytes(i + 1);
+                return fromName(new String(head, MAGIC.length, i - MAGIC.length, StandardCharsets.US_ASCII));
+            }
+        }
+        throw new IOException("corrupt codec header");
+    }
+}
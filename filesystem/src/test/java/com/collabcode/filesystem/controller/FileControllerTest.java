@@ -0,0 +1,57 @@
+package com.collabcode.filesystem.controller;
+
+import com.collabcode.filesystem.repository.BlobRepository;
+import com.collabcode.filesystem.repository.SnapshotRepository;
+import com.collabcode.filesystem.service.SnapshotHeadIndex;
+import com.collabcode.filesystem.service.SnapshotStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileControllerTest {
+
+	@TempDir
+	Path root;
+
+	@Test
+	void pathsOutsideTheBaseDirectoryAreRefused() throws Exception {
+		Path baseDir = Files.createDirectories(root.resolve("projects"));
+		Files.writeString(root.resolve("secret.txt"), "secret");
+		SnapshotRepository snapshots = Mockito.mock(SnapshotRepository.class);
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 16, "none", Mockito.mock(BlobRepository.class));
+		FileController files = new FileController(snapshots, store,
+			new SnapshotHeadIndex(baseDir.toString(), store), new ObjectMapper());
+		ReflectionTestUtils.setField(files, "baseDir", baseDir.toString());
+
+		FileController.LinkRequest link = new FileController.LinkRequest();
+		link.fileId   = "abc";
+		link.filename = "1/abc-main-py/abc_20250101_100000.py";
+		link.source   = "../secret.txt";
+		link.author   = "someone";
+		link.summary  = "fork";
+		assertTrue(files.linkFile(link).message.startsWith("ERROR"));
+
+		FileController.SnapshotRequest save = new FileController.SnapshotRequest();
+		save.fileId   = "abc";
+		save.filename = "1/../../escaped.py";
+		save.content  = "print(1)";
+		save.author   = "someone";
+		save.summary  = "snapshot";
+		assertTrue(files.saveFile(save).message.startsWith("ERROR"));
+
+		assertEquals(400, files.deleteFile(1L, "").getStatusCode().value());
+		assertEquals(500, files.deleteFile(1L, "../../projects").getStatusCode().value());
+		assertTrue(Files.isDirectory(baseDir));
+
+		assertFalse(Files.exists(root.resolve("escaped.py")));
+		assertFalse(Files.exists(baseDir.resolve("1/abc-main-py/abc_20250101_100000.py")));
+		Mockito.verifyNoInteractions(snapshots);
+	}
+}
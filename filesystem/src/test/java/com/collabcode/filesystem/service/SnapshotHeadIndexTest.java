@@ -0,0 +1,91 @@
+package com.collabcode.filesystem.service;
+
+import com.collabcode.filesystem.repository.BlobRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotHeadIndexTest {
+
+	@TempDir
+	Path baseDir;
+
+	@Test
+	void advanceMovesHeadForwardOnly() throws Exception {
+		SnapshotHeadIndex heads = new SnapshotHeadIndex(baseDir.toString(),
+			new SnapshotStore(baseDir.toString(), 16, "none", Mockito.mock(BlobRepository.class)));
+		Path dir = Files.createDirectories(baseDir.resolve("1/abc-main-py"));
+
+		Path older = Files.writeString(dir.resolve("abc_20250101_100000.py"), "a");
+		Path newer = Files.writeString(dir.resolve("abc_20250101_110000.py"), "b");
+		heads.advance(newer, ContentHash.sha256("b"));
+		heads.advance(older, ContentHash.sha256("a"));
+
+		assertEquals(newer, heads.latest(dir));
+		assertEquals(ContentHash.sha256("b"), heads.latestWithHash(dir).contentHash());
+	}
+
+	@Test
+	void missingOrStaleHeadIsRebuiltFromDisk() throws Exception {
+		SnapshotHeadIndex heads = new SnapshotHeadIndex(baseDir.toString(),
+			new SnapshotStore(baseDir.toString(), 16, "none", Mockito.mock(BlobRepository.class)));
+		Path dir = Files.createDirectories(baseDir.resolve("1/abc-main-py"));
+		assertNull(heads.latest(dir));
+
+		Files.writeString(dir.resolve("abc_20250101_100000.py"), "a");
+		Path newest = Files.writeString(dir.resolve("abc_20250101_110000.py"), "b");
+		assertEquals(newest, heads.latest(dir));
+
+		// simulate a crash that left the head pointing at a deleted snapshot
+		Files.writeString(dir.resolve(SnapshotHeadIndex.HEAD_FILE), "abc_20250101_120000.py");
+		assertEquals(newest, heads.latest(dir));
+
+		Files.writeString(dir.resolve(SnapshotHeadIndex.HEAD_FILE), "abc_20250101_100000.py");
+		assertEquals(1, heads.rebuildAll());
+		assertEquals(newest, heads.latest(dir));
+		assertEquals(ContentHash.sha256("b"), heads.latestWithHash(dir).contentHash());
+	}
+
+	@Test
+	void updatesOfOneFileDirRunOneAtATime() throws Exception {
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 4, "none", Mockito.mock(BlobRepository.class));
+		SnapshotHeadIndex heads = new SnapshotHeadIndex(baseDir.toString(), store);
+		Path dir = Files.createDirectories(baseDir.resolve("1/abc-main-py"));
+		AtomicInteger inside = new AtomicInteger();
+		AtomicInteger most = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<?>> saves = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			Path snapshot = dir.resolve(String.format("abc_20250101_%06d.py", i));
+			String content = "print(" + i + ")\n".repeat(i + 1);
+			saves.add(pool.submit(() -> heads.update(dir, () -> {
+				most.accumulateAndGet(inside.incrementAndGet(), Math::max);
+				String hash = store.write(snapshot, content, heads.latest(dir));
+				heads.advance(snapshot, hash);
+				inside.decrementAndGet();
+				return hash;
+			})));
+		}
+		for (Future<?> save : saves) save.get();
+		pool.shutdown();
+
+		assertEquals(1, most.get());
+		for (int i = 0; i < 40; i++) {
+			Path snapshot = dir.resolve(String.format("abc_20250101_%06d.py", i));
+			assertEquals("print(" + i + ")\n".repeat(i + 1), store.readString(snapshot));
+		}
+		assertEquals(dir.resolve("abc_20250101_000039.py"), heads.latest(dir));
+	}
+}
@@ -0,0 +1,261 @@
+package com.collabcode.filesystem.service;
+
+import com.collabcode.filesystem.entity.Blob;
+import com.collabcode.filesystem.repository.BlobRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+	@TempDir
+	Path baseDir;
+
+	@Test
+	void lineDeltaRoundTripsExactly() {
+		String[][] pairs = {
+			{ "", "a" },
+			{ "a\nb\nc\n", "a\nc\n" },
+			{ "a\nb\nc", "a\nb\nc\n" },
+			{ "a\r\nb\r\n", "a\r\nx\r\nb\r\n" },
+			{ "héllo\nwörld\n", "héllo\n🌍\nwörld" },
+			{ "x\n", "" },
+		};
+		for (String[] pair : pairs) {
+			assertEquals(pair[1], LineDelta.apply(pair[0], LineDelta.diff(pair[0], pair[1])));
+		}
+	}
+
+	@Test
+	void everyVersionReadsBackAcrossKeyframes() throws Exception {
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 4, "deflate", Mockito.mock(BlobRepository.class));
+		List<String> versions = versions(40, 200, new Random(1));
+		List<Path> snapshots = writeAll(store, baseDir.resolve("1/abc-main-py"), versions);
+
+		for (int i = 0; i < versions.size(); i++) {
+			assertEquals(versions.get(i), store.readString(snapshots.get(i)));
+			assertEquals(ContentHash.sha256(versions.get(i)), store.hashOf(snapshots.get(i)));
+			try (var in = store.open(snapshots.get(i))) {
+				assertEquals(versions.get(i), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		assertTrue(blobBytes() < versions.stream().mapToLong(String::length).sum() / 2);
+	}
+
+	@Test
+	void compressedKeyframesAreServedAsStoredAndOldFormatsStillRead() throws Exception {
+		BlobRepository blobs = Mockito.mock(BlobRepository.class);
+		SnapshotStore plain    = new SnapshotStore(baseDir.toString(), 16, "none", blobs);
+		SnapshotStore deflated = new SnapshotStore(baseDir.toString(), 16, "deflate", blobs);
+		Path dir = baseDir.resolve("1/abc-main-py");
+		String content = "int main() {\n    return 0;\n}\n".repeat(50);
+
+		Path legacy = Files.writeString(Files.createDirectories(dir).resolve("abc_20250101_000000.c"), "legacy");
+		Path older  = dir.resolve("abc_20250101_000001.c");
+		Path newer  = dir.resolve("abc_20250101_000002.c");
+		plain.write(older, content, null);
+		deflated.write(newer, content + "// more\n".repeat(40), null);
+
+		assertEquals("legacy", deflated.readString(legacy));
+		assertEquals(content, deflated.readString(older));
+		assertNull(deflated.openEncoded(older, StorageCodec.DEFLATE));
+		try (var in = new InflaterInputStream(deflated.openEncoded(newer, StorageCodec.DEFLATE))) {
+			assertEquals(plain.readString(newer), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void linkedBlobsAreCollectedOnceNothingReferencesThem() throws Exception {
+		BlobRepository blobs = blobRepository();
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 16, "none", blobs);
+		Path original = baseDir.resolve("1/abc-main-py/abc_20250101_000000.py");
+		Path copy     = baseDir.resolve("2/def-main-py/def_20250101_000000.py");
+		String hash = store.write(original, "print(1)\n", null);
+
+		assertEquals(hash, store.link(original, copy));
+		assertEquals(2, blobs.findById(hash).orElseThrow().getRefCount());
+
+		store.release(baseDir.resolve("1"));
+		assertEquals(0, store.collectGarbage());
+		assertEquals("print(1)\n", store.readString(copy));
+
+		// rewriting the copy's reference releases the blob it pointed at
+		String other = store.write(copy, "print(2)\n", null);
+		assertEquals(1, store.collectGarbage());
+		assertTrue(blobs.findById(hash).isEmpty());
+		assertEquals("print(2)\n", store.readString(copy));
+		assertEquals(1, blobs.findById(other).orElseThrow().getRefCount());
+		try (Stream<Path> files = Files.list(copy.getParent())) {
+			assertEquals(List.of(copy), files.toList());
+		}
+	}
+
+	@Test
+	void deletingAFileDirFreesTheBlobsOnlyItReferenced() throws Exception {
+		BlobRepository blobs = blobRepository();
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 16, "none", blobs);
+		Path kept    = baseDir.resolve("1/abc-main-py/abc_20250101_000000.py");
+		Path deleted = baseDir.resolve("1/def-util-py/def_20250101_000000.py");
+		Path shared  = baseDir.resolve("1/def-util-py/def_20250101_000001.py");
+		String own = store.write(deleted, "def f(): pass\n", null);
+		String common = store.write(kept, "print(1)\n", null);
+		store.link(kept, shared);
+
+		store.delete(deleted.getParent());
+		assertEquals(1, store.collectGarbage());
+		assertFalse(Files.exists(deleted.getParent()));
+		assertTrue(blobs.findById(own).isEmpty());
+		assertEquals(1, blobs.findById(common).orElseThrow().getRefCount());
+		assertEquals("print(1)\n", store.readString(kept));
+	}
+
+	@Test
+	void deltaBasesAreKeptUntilTheirLastDeltaIsCollected() throws Exception {
+		BlobRepository blobs = blobRepository();
+		SnapshotStore store = new SnapshotStore(baseDir.toString(), 16, "deflate", blobs);
+		List<String> versions = versions(2, 200, new Random(7));
+		Path first  = baseDir.resolve("1/abc-main-py/abc_20250101_000000.py");
+		Path linked = baseDir.resolve("2/def-main-py/def_20250101_000000.py");
+		Path second = baseDir.resolve("2/def-main-py/def_20250101_000001.py");
+		String base = store.write(first, versions.get(0), null);
+		store.link(first, linked);
+		String delta = store.write(second, versions.get(1), linked);
+
+		// a reference from each snapshot and one from the delta built on it
+		assertEquals(3, blobs.findById(base).orElseThrow().getRefCount());
+		assertTrue(blobBytes() < versions.get(0).length());
+
+		store.release(baseDir.resolve("1"));
+		assertEquals(0, store.collectGarbage());
+		assertEquals(versions.get(1), store.readString(second));
+
+		// the delta goes first, then the base it released
+		store.release(baseDir.resolve("2"));
+		assertEquals(2, store.collectGarbage());
+		assertTrue(blobs.findById(base).isEmpty());
+		assertTrue(blobs.findById(delta).isEmpty());
+		assertEquals(0, blobBytes());
+	}
+
+	/** Disk use of a long-lived file; interval 1 stores every version in full. */
+	@Test
+	void deltasStoreALongHistoryInAFractionOfTheSpace() throws Exception {
+		List<String> versions = versions(256, 2_000, new Random(42));
+		long full  = historyBytes(versions, 1, "none");
+		long delta = historyBytes(versions, 16, "none");
+
+		assertTrue(delta * 5 < full, "deltas saved too little: " + delta + " vs " + full + " bytes");
+	}
+
+	@Test
+	void deflateStoresAHistoryInAFractionOfTheSpace() throws Exception {
+		List<String> versions = versions(64, 2_000, new Random(42));
+		long full       = historyBytes(versions, 1, "none");
+		long compressed = historyBytes(versions, 1, "deflate");
+
+		assertTrue(compressed * 3 < full, "deflate saved too little: " + compressed + " vs " + full + " bytes");
+	}
+
+	/* ---------- helpers ---------- */
+
+	private static List<Path> writeAll(SnapshotStore store, Path dir, List<String> versions) throws Exception {
+		List<Path> snapshots = new ArrayList<>();
+		Path previous = null;
+		for (int i = 0; i < versions.size(); i++) {
+			Path snapshot = dir.resolve(String.format("abc_20250101_%06d.py", i));
+			store.write(snapshot, versions.get(i), previous);
+			snapshots.add(snapshot);
+			previous = snapshot;
+		}
+		return snapshots;
+	}
+
+	/** Successive versions of a file, each changing, adding or removing a few lines. */
+	private static List<String> versions(int count, int lines, Random random) {
+		List<String> file = new ArrayList<>();
+		for (int i = 0; i < lines; i++) file.add("    int value" + i + " = compute(" + random.nextInt(1000) + ");\n");
+
+		List<String> versions = new ArrayList<>();
+		for (int v = 0; v < count; v++) {
+			for (int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+				int at = random.nextInt(file.size());
+				switch (random.nextInt(3)) {
+					case 0 -> file.set(at, "    // edited in version " + v + "\n");
+					case 1 -> file.add(at, "    log(\"v" + v + "\");\n");
+					default -> file.remove(at);
+				}
+			}
+			versions.add(String.join("", file));
+		}
+		return versions;
+	}
+
+	/** A BlobRepository over a map, enough for the store's reference counting. */
+	private static BlobRepository blobRepository() {
+		Map<String, Blob> rows = new ConcurrentHashMap<>();
+		BlobRepository blobs = Mockito.mock(BlobRepository.class);
+		Mockito.when(blobs.adjustRefCount(Mockito.anyString(), Mockito.anyLong())).thenAnswer(call -> {
+			Blob blob = rows.get(call.<String>getArgument(0));
+			if (blob == null) return 0;
+			blob.setRefCount(blob.getRefCount() + call.<Long>getArgument(1));
+			return 1;
+		});
+		Mockito.when(blobs.save(Mockito.any(Blob.class))).thenAnswer(call -> {
+			Blob blob = call.getArgument(0);
+			rows.put(blob.getHash(), blob);
+			return blob;
+		});
+		Mockito.when(blobs.findById(Mockito.anyString()))
+		       .thenAnswer(call -> Optional.ofNullable(rows.get(call.<String>getArgument(0))));
+		Mockito.when(blobs.findByRefCountLessThanEqual(Mockito.anyLong())).thenAnswer(call ->
+			rows.values().stream().filter(b -> b.getRefCount() <= call.<Long>getArgument(0)).toList());
+		Mockito.doAnswer(call -> rows.remove(call.<Blob>getArgument(0).getHash()))
+		       .when(blobs).delete(Mockito.any(Blob.class));
+		return blobs;
+	}
+
+	/** Blob bytes on disk after writing every version with the given settings; each version must read back. */
+	private long historyBytes(List<String> versions, int interval, String codec) throws Exception {
+		Path dir = Files.createDirectories(baseDir.resolve("k" + interval + codec));
+		SnapshotStore store = new SnapshotStore(dir.toString(), interval, codec, Mockito.mock(BlobRepository.class));
+		List<Path> snapshots = writeAll(store, dir.resolve("1/abc-main-py"), versions);
+		for (int i = 0; i < snapshots.size(); i++) {
+			assertEquals(versions.get(i), read(store, snapshots.get(i)));
+		}
+		return blobBytes(dir);
+	}
+
+	private static String read(SnapshotStore store, Path snapshot) {
+		try {
+			return store.readString(snapshot);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private long blobBytes() throws Exception {
+		return blobBytes(baseDir);
+	}
+
+	private static long blobBytes(Path base) throws Exception {
+		try (Stream<Path> files = Files.walk(base.resolve(SnapshotStore.BLOB_DIR))) {
+			long total = 0;
+			for (Path p : files.filter(Files::isRegularFile).toList()) total += Files.size(p);
+			return total;
+		}
+	}
+}
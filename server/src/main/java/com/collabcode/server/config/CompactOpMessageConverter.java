@@ -0,0 +1,45 @@
+package com.collabcode.server.config;
+
+import com.collabcode.server.controller.FileEditWebSocketController.EditMessage;
+import com.collabcode.server.service.CompactOpCodec;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads OP frames a client sent as {@code text/x-collab-op} straight into an
+ * EditMessage with {@link CompactOpCodec}. Frames of any other content type
+ * are left to the JSON converter.
+ */
+public class CompactOpMessageConverter extends AbstractMessageConverter {
+
+    public CompactOpMessageConverter() {
+        super(CompactOpCodec.MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EditMessage.class == clazz;
+    }
+
+    @Override
+    protected boolean canConvertTo(Object payload, MessageHeaders headers) {
+        // broadcasts are encoded by EditFanout itself
+        return false;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        String frame = payload instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : payload.toString();
+        try {
+            return CompactOpCodec.decodeOp(frame);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new MessageConversionException(message, "Malformed OP frame: " + e.getMessage(), e);
+        }
+    }
+}
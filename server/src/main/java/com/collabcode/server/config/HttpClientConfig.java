@@ -0,0 +1,49 @@
+package com.collabcode.server.config;
+
+import com.collabcode.server.service.DownstreamClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The one {@link HttpClient} the server calls its downstream services with.
+ * Sharing it keeps their connections pooled and alive between requests,
+ * instead of a new client, selector thread and TCP handshake per call.
+ *
+ * {@code http.client.version} is HTTP_1_1 by default, as the downstream
+ * services speak plain HTTP/1.1; with HTTP_2 the client uses HTTP/2 wherever
+ * a service offers it, over TLS or h2c.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public HttpClient httpClient(@Value("${http.client.connect-timeout-ms:2000}") long connectTimeoutMillis,
+                                 @Value("${http.client.version:HTTP_1_1}") HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+    }
+
+    @Bean
+    public DownstreamClient filesystemHttp(HttpClient httpClient,
+                                           MeterRegistry registry,
+                                           @Value("${filesystem.read-timeout-ms:30000}") long readTimeoutMillis) {
+        return new DownstreamClient(httpClient, registry, "filesystem", Duration.ofMillis(readTimeoutMillis));
+    }
+
+    /** RestTemplate for the filesystem service, over the shared client. */
+    @Bean
+    public RestTemplate filesystemRestTemplate(DownstreamClient filesystemHttp) {
+        RestTemplate rest = new RestTemplate(filesystemHttp.requestFactory());
+        rest.setInterceptors(List.of(filesystemHttp.metrics()));
+        return rest;
+    }
+}
@@ -1,23 +1,90 @@
 package com.collabcode.server.config;
 
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.List;
+
+/**
+ * STOMP over SockJS on /ws. With {@code collab.broker.mode=simple} (the
+ * default) /topic is served by an in-process broker, so a broadcast only
+ * reaches clients of this node. With {@code collab.broker.mode=relay} /topic
+ * is relayed to an external STOMP broker (ActiveMQ, RabbitMQ, ...) shared by
+ * every server node, so /topic/edit/{fileId} reaches all of a file's clients
+ * whichever node they are connected to.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    @Value("${collab.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${collab.broker.host:localhost}")
+    private String brokerHost;
+
+    @Value("${collab.broker.port:61613}")
+    private int brokerPort;
+
+    @Value("${collab.broker.login:guest}")
+    private String brokerLogin;
+
+    @Value("${collab.broker.passcode:guest}")
+    private String brokerPasscode;
+
+    @Value("${collab.ws.send-buffer-bytes:524288}")
+    private int sendBufferBytes;
+
+    @Value("${collab.ws.send-time-ms:10000}")
+    private int sendTimeMillis;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
+        // a client's OP messages must reach the OT engine in the order they were sent
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // a client that cannot keep up with edits is dropped rather than
+        // buffered for without bound; run output is flow-controlled by
+        // ExecutionRelay and stays well below the limit
+        registration.setSendBufferSizeLimit(sendBufferBytes);
+        registration.setSendTimeLimit(sendTimeMillis);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // clients may send OP frames compact instead of as JSON
+        messageConverters.add(new CompactOpMessageConverter());
+        return true;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        if ("relay".equals(brokerMode)) {
+            registry.enableStompBrokerRelay("/topic")
+                    .setRelayHost(brokerHost)
+                    .setRelayPort(brokerPort)
+                    .setClientLogin(brokerLogin)
+                    .setClientPasscode(brokerPasscode)
+                    .setSystemLogin(brokerLogin)
+                    .setSystemPasscode(brokerPasscode);
+        } else if ("simple".equals(brokerMode)) {
+            registry.enableSimpleBroker("/topic");
+        } else {
+            throw new IllegalStateException("collab.broker.mode must be simple or relay, not " + brokerMode);
+        }
         registry.setApplicationDestinationPrefixes("/app");
+        // and broadcasts must reach each client in revision order
+        registry.setPreservePublishOrder(true);
     }
 }
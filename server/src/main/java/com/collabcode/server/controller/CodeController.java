@@ -5,17 +5,21 @@ import com.collabcode.server.entity.Snapshot;
 import com.collabcode.server.factory.FileMetadataFactory;
 import com.collabcode.server.repository.FileMetadataRepository;
 import com.collabcode.server.repository.FolderRepository;
+import com.collabcode.server.service.CollaborationService;
+import com.collabcode.server.service.CollaborativeDocument;
+import com.collabcode.server.service.ContentHash;
 import com.collabcode.server.service.FileSystemClient;
+import com.collabcode.server.service.LatestSnapshotCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import com.github.difflib.DiffUtils;
 import com.github.difflib.patch.Patch;
 import com.github.difflib.patch.AbstractDelta;
@@ -37,18 +41,25 @@ public class CodeController {
     @Value("${filesystem.service.url}")
     private String fsUrl;
 
-    
-    private final RestTemplate rest = new RestTemplate();
+    private final RestTemplate rest;
     private final FileMetadataRepository metaRepo;
     private final FolderRepository folderRepo;
     private final FileSystemClient fsClient;
+    private final LatestSnapshotCache latestCache;
+    private final CollaborationService collaboration;
 
-    public CodeController(FileMetadataRepository metaRepo,
+    public CodeController(RestTemplate rest,
+                          FileMetadataRepository metaRepo,
                           FolderRepository folderRepo,
-                          FileSystemClient fsClient) {
-        this.metaRepo   = metaRepo;
-        this.folderRepo = folderRepo;
-        this.fsClient   = fsClient;
+                          FileSystemClient fsClient,
+                          LatestSnapshotCache latestCache,
+                          CollaborationService collaboration) {
+        this.rest          = rest;
+        this.metaRepo      = metaRepo;
+        this.folderRepo    = folderRepo;
+        this.fsClient      = fsClient;
+        this.latestCache   = latestCache;
+        this.collaboration = collaboration;
     }
 
     /* ───────────────────────── SNAPSHOTS LIST ─────────────────────── */
@@ -77,18 +88,28 @@ public class CodeController {
 
     /* ───────────────────────────── SAVE ───────────────────────────── */
 
+    /**
+     * Saves a file of an existing fileId with ?fileId=, which only routes the
+     * request: nginx sends it to the node that holds the file's live document
+     * and latest-snapshot cache, as it does for the file's WebSocket. A save
+     * whose fileId is not the file named by folderId and filename is refused,
+     * as it would have been routed by the wrong file.
+     */
     @PostMapping
     public ResponseEntity<SaveResponse> save(@RequestBody CodeRequest req,
+                                             @RequestParam(required = false) String fileId,
                                              OAuth2AuthenticationToken auth) {
         try {
-            FileMetadata meta = metaRepo.findAll().stream()
-                .filter(f -> f.getFilename().equals(req.getFilename())
-                          && f.getFolderId().equals(req.getFolderId()))
-                .findFirst()
+            FileMetadata meta = metaRepo
+                .findByFolderIdAndFilename(req.getFolderId(), req.getFilename())
                 .orElseGet(() -> metaRepo.save(
                     FileMetadataFactory.createFileMetadata(
                         req.getFilename(), "anonymous", req.getFolderId()
                     )));
+            if (fileId != null && !fileId.isBlank() && !fileId.equals(meta.getId())) {
+                return ResponseEntity.badRequest()
+                       .body(new SaveResponse("ERROR", "fileId does not match folderId and filename"));
+            }
 
             Long projectId = folderRepo.findById(req.getFolderId())
                 .orElseThrow(() -> new RuntimeException("Folder not found"))
@@ -97,23 +118,22 @@ public class CodeController {
 
             fsClient.createFolder(projectId, fileDir);
 
-            boolean identical = false;
-            try {
-                String latestUrl = fsUrl
-                    + "/latest?projectId=" + projectId
-                    + "&fileDir=" + fileDir;
-                ResponseEntity<LatestResponse> latestRsp =
-                    rest.getForEntity(latestUrl, LatestResponse.class);
-
-                if (latestRsp.getStatusCode() == HttpStatus.OK
-                    && latestRsp.getBody() != null
-                    && req.getCode().equals(latestRsp.getBody().getContent())) {
-                    identical = true;
-                    return ResponseEntity.ok(
-                        new SaveResponse(meta.getId(), latestRsp.getBody().getSnapshotName())
-                    );
-                }
-            } catch (HttpClientErrorException.NotFound nf) {
+            if (req.getCode() == null) {
+                return ResponseEntity.badRequest()
+                       .body(new SaveResponse("ERROR", "code is required"));
+            }
+
+            // de-duplicate against the cached copy, else against the stored digest,
+            // so an unchanged save never transfers the file body
+            String contentHash = ContentHash.sha256(req.getCode());
+            LatestResponse previous = latestCache.get(projectId, fileDir);
+            if (previous == null) {
+                previous = fsClient.getLatestHash(projectId, fileDir);
+            }
+            if (previous != null
+                && (contentHash.equals(previous.getContentHash())
+                    || req.getCode().equals(previous.getContent()))) {
+                return ResponseEntity.ok(new SaveResponse(meta.getId(), previous.getSnapshotName()));
             }
 
             // ─── build and save new snapshot
@@ -130,12 +150,10 @@ public class CodeController {
             }
             String summary = req.getSummary() != null ? req.getSummary() : "snapshot";
 
-            SnapshotRequest body = new SnapshotRequest(
-                meta.getId(), rel, req.getCode(), author, summary
-            );
-            HttpHeaders hdr = new HttpHeaders();
-            hdr.setContentType(MediaType.APPLICATION_JSON);
-            rest.postForEntity(fsUrl + "/save", new HttpEntity<>(body, hdr), Void.class);
+            // the filesystem reports a failed save in its message, so only a
+            // confirmed save is cached as the file's latest snapshot
+            fsClient.saveSnapshot(meta.getId(), rel, req.getCode(), author, summary);
+            latestCache.put(projectId, fileDir, new LatestResponse(rel, req.getCode(), contentHash));
 
             return ResponseEntity.ok(new SaveResponse(meta.getId(), rel));
 
@@ -158,11 +176,22 @@ public class CodeController {
                 .getProjectId();
             String fileDir = meta.getId() + "-" + meta.getFilename().replace('.', '-');
 
+            LatestResponse cached = latestCache.get(projectId, fileDir);
+
+            // a file being edited right now is served from its live buffer
+            Optional<CollaborativeDocument.State> live = collaboration.live(fileId);
+            if (live.isPresent()) {
+                return ResponseEntity.ok(new LatestResponse(
+                    cached != null ? cached.getSnapshotName() : null, live.get().content()));
+            }
+            if (cached != null) return ResponseEntity.ok(cached);
+
             ResponseEntity<LatestResponse> rsp =
                 rest.getForEntity(
                   fsUrl + "/latest?projectId=" + projectId + "&fileDir=" + fileDir,
                   LatestResponse.class
                 );
+            if (rsp.getStatusCode().is2xxSuccessful()) latestCache.put(projectId, fileDir, rsp.getBody());
             return ResponseEntity.status(rsp.getStatusCode()).body(rsp.getBody());
 
         } catch (Exception e) {
@@ -281,14 +310,6 @@ public class CodeController {
         public void   setSummary(String s) { summary = s; }
     }
 
-    private record SnapshotRequest(
-        String fileId,
-        String filename,
-        String content,
-        String author,
-        String summary
-    ) { }
-
     public static class SaveResponse {
         private String fileId;
         private String snapshotName;
@@ -304,14 +325,20 @@ public class CodeController {
     public static class LatestResponse {
         private String snapshotName;
         private String content;
+        private String contentHash;
         public LatestResponse() { }
         public LatestResponse(String s, String c) {
             snapshotName = s; content = c;
         }
+        public LatestResponse(String s, String c, String h) {
+            snapshotName = s; content = c; contentHash = h;
+        }
         public String getSnapshotName()        { return snapshotName; }
         public void   setSnapshotName(String v){ snapshotName = v; }
         public String getContent()             { return content; }
         public void   setContent(String v)     { content = v; }
+        public String getContentHash()         { return contentHash; }
+        public void   setContentHash(String v) { contentHash = v; }
     }
 
     public static class SnapshotInfo {
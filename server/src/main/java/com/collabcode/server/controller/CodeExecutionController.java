@@ -1,25 +1,94 @@
 package com.collabcode.server.controller;
 
-import com.collabcode.server.service.CodeExecutionService;
+import com.collabcode.server.service.ExecutionJobs;
+import com.collabcode.server.service.ExecutionRelay;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ *  –  POST /api/execute              → run a snapshot, answer with its output
+ *  –  POST /api/execute/jobs         → queue a run, answer 202 with its job id
+ *  –  GET  /api/execute/jobs/{jobId} → status and output of a queued run
+ *
+ * Runs execute on {@link ExecutionJobs}' threads; POST /api/execute waits
+ * for its job asynchronously, so no request thread waits on user code.
+ */
 @RestController
 @RequestMapping("/api/execute")
 public class CodeExecutionController {
 
     @Autowired
-    private CodeExecutionService codeExecutionService;
+    private ExecutionJobs executionJobs;
+
+    @Autowired
+    private ExecutionRelay executionRelay;
+
+    public record RunRequest(String runId, String fileId, String snapshotName) { }
+
+    public record RunCredit(String runId, int frames) { }
 
     @PostMapping
-    public ResponseEntity<String> executeCode(@RequestParam String fileId, @RequestParam String snapshotName) {
-        try {
-            String output = codeExecutionService.execute(fileId, snapshotName);
-            return ResponseEntity.ok(output);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Execution failed: " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<String>> executeCode(@RequestParam String fileId, @RequestParam String snapshotName) {
+        return executionJobs.submit(fileId, snapshotName).output().handle((output, error) -> {
+            if (error == null) return ResponseEntity.ok(output);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException rejected) return busy(rejected);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Execution failed: " + cause.getMessage());
+        });
+    }
+
+    /**
+     * Queues a run. Its status is at the Location returned, and is pushed to
+     * /topic/job/{jobId} when the run ends; a client that subscribes after
+     * submitting fetches the status once to cover a run that already ended.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ExecutionJobs.JobStatus> submitJob(@RequestParam String fileId, @RequestParam String snapshotName) {
+        String jobId = executionJobs.submit(fileId, snapshotName).jobId();
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/execute/jobs/" + jobId))
+                .body(executionJobs.status(jobId).orElseThrow());
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ExecutionJobs.JobStatus> jobStatus(@PathVariable String jobId) {
+        return ResponseEntity.of(executionJobs.status(jobId));
+    }
+
+    /**
+     * SEND /app/execute
+     * Runs a snapshot and streams its output to /topic/run/{runId}. Clients
+     * subscribe there first; frames of a session are handled in order, so
+     * the subscription is in place before the run starts.
+     */
+    @MessageMapping("/execute")
+    public void streamCode(@Payload RunRequest request, @Header("simpSessionId") String sessionId) {
+        executionRelay.start(request.runId(), sessionId, request.fileId(), request.snapshotName());
+    }
+
+    /**
+     * SEND /app/execute/credit
+     * The client has taken this many more OUTPUT frames of a run; the run's
+     * output only goes a few frames ahead of its credits.
+     */
+    @MessageMapping("/execute/credit")
+    public void creditRun(@Payload RunCredit credit, @Header("simpSessionId") String sessionId) {
+        executionRelay.credit(credit.runId(), sessionId, credit.frames());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> busy(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1")
+                .body("Too many runs in progress, try again shortly");
     }
 }
@@ -1,28 +1,69 @@
 package com.collabcode.server.controller;
 
+import com.collabcode.server.service.AutosaveService;
+import com.collabcode.server.service.CollaborationService;
+import com.collabcode.server.service.CollaborativeDocument;
+import com.collabcode.server.service.EditFanout;
+import com.collabcode.server.service.PresenceService;
+import com.collabcode.server.service.TextOperation;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Controller
 public class FileEditWebSocketController {
 
     private final SimpMessagingTemplate messagingTemplate;
-
-    private final Map<String, Set<String>> activeEditors = new ConcurrentHashMap<>();
-
-    public FileEditWebSocketController(SimpMessagingTemplate messagingTemplate) {
+    private final CollaborationService collaboration;
+    private final AutosaveService autosave;
+    private final EditFanout fanout;
+    private final PresenceService presence;
+
+    public FileEditWebSocketController(SimpMessagingTemplate messagingTemplate,
+                                       CollaborationService collaboration,
+                                       AutosaveService autosave,
+                                       EditFanout fanout,
+                                       PresenceService presence) {
         this.messagingTemplate = messagingTemplate;
+        this.collaboration     = collaboration;
+        this.autosave          = autosave;
+        this.fanout            = fanout;
+        this.presence          = presence;
+    }
+
+    /**
+     * SUBSCRIBE /app/doc/{fileId}
+     * One-off reply with the live document and its revision, the starting
+     * point for sending OP messages. The session must have sent SUBSCRIBE for
+     * the file first, so that the document is closed again when it leaves.
+     */
+    @SubscribeMapping("/doc/{fileId}")
+    public DocumentState document(@DestinationVariable String fileId,
+                                  @Header("simpSessionId") String sessionId) {
+        if (!presence.editing(sessionId, fileId)) {
+            throw new IllegalStateException("Send SUBSCRIBE for file " + fileId + " first");
+        }
+        CollaborativeDocument.State state = collaboration.document(fileId).state();
+        return new DocumentState(fileId, state.content(), state.revision());
     }
 
     @MessageMapping("/edit")
-    public void handleEditMessage(@Payload EditMessage message) {
+    public void handleEditMessage(@Payload EditMessage message,
+                                  @Header("simpSessionId") String sessionId) {
+        presence.touch(sessionId);
+
         if ("EDIT".equals(message.getType()) || "SUBSCRIBE".equals(message.getType())) {
-            activeEditors.computeIfAbsent(message.getFileId(), k -> ConcurrentHashMap.newKeySet()).add(message.getUserId());
+            if ("SUBSCRIBE".equals(message.getType())) {
+                if (presence.join(sessionId, message.getUserId(), message.getFileId())) {
+                    collaboration.document(message.getFileId());
+                }
+            }
 
             if (!message.isSender) {
                 messagingTemplate.convertAndSend("/topic/edit/" + message.getFileId(), message);
@@ -30,6 +71,51 @@ public class FileEditWebSocketController {
 
         } else if ("REFRESH".equals(message.getType())) {
             messagingTemplate.convertAndSend("/topic/edit/" + message.getFileId(), message);
+
+        } else if ("OP".equals(message.getType())) {
+            handleOperation(message, sessionId);
+
+        } else if ("LEAVE".equals(message.getType())) {
+            // the live document is saved and dropped with its last editor
+            presence.leave(sessionId, message.getFileId());
+        }
+        // HEARTBEAT only keeps the session's presence alive
+    }
+
+    /**
+     * OP: an edit made against message.revision. It is transformed past the
+     * edits accepted since, applied, and broadcast with its new revision in
+     * the next OPS batch; the sender recognises its own opId in the broadcast
+     * as the acknowledgement.
+     * The file is persisted later by the autosave, coalesced with other edits.
+     * If the op cannot be applied the sender is told to RESYNC.
+     */
+    private void handleOperation(EditMessage message, String sessionId) {
+        try {
+            if (message.getRevision() == null) throw new IllegalArgumentException("revision is missing");
+            if (!presence.join(sessionId, message.getUserId(), message.getFileId())) {
+                throw new IllegalStateException("userId is missing");
+            }
+            TextOperation op = TextOperation.fromJson(message.getOps());
+            CollaborativeDocument doc = collaboration.document(message.getFileId());
+
+            // publish while holding the document so broadcasts leave in revision order
+            synchronized (doc) {
+                CollaborativeDocument.Applied applied = doc.apply(message.getRevision(), op);
+                message.setRevision(applied.revision());
+                message.setOps(applied.operation().toJson());
+                message.setText(null);
+                fanout.publish(message.getFileId(), message);
+            }
+            autosave.edited(doc, message.getUserId());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            EditMessage resync = new EditMessage();
+            resync.setType("RESYNC");
+            resync.setFileId(message.getFileId());
+            resync.setUserId(message.getUserId());
+            resync.setOpId(message.getOpId());
+            resync.setText(e.getMessage());
+            fanout.publish(message.getFileId(), resync);
         }
     }
 
@@ -42,6 +128,9 @@ public class FileEditWebSocketController {
         private int end;
         private String timestamp;
         private boolean isSender;
+        private Integer revision;
+        private List<Object> ops;
+        private String opId;
 
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
@@ -66,5 +155,16 @@ public class FileEditWebSocketController {
 
         public boolean isSender() { return isSender; }
         public void setSender(boolean isSender) { this.isSender = isSender; }
+
+        public Integer getRevision() { return revision; }
+        public void setRevision(Integer revision) { this.revision = revision; }
+
+        public List<Object> getOps() { return ops; }
+        public void setOps(List<Object> ops) { this.ops = ops; }
+
+        public String getOpId() { return opId; }
+        public void setOpId(String opId) { this.opId = opId; }
     }
+
+    public record DocumentState(String fileId, String content, int revision) { }
 }
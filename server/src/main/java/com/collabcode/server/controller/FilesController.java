@@ -5,6 +5,7 @@ import com.collabcode.server.factory.FileMetadataFactory;
 import com.collabcode.server.repository.FileMetadataRepository;
 import com.collabcode.server.repository.FolderRepository;
 import com.collabcode.server.service.FileSystemClient;
+import com.collabcode.server.service.LatestSnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -13,8 +14,6 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/files")
@@ -23,15 +22,13 @@ public class FilesController {
     @Autowired private FileMetadataRepository fileRepo;
     @Autowired private FolderRepository       folderRepo;
     @Autowired private FileSystemClient       fsClient;
+    @Autowired private LatestSnapshotCache    latestCache;
 
     /* ---------- list ---------- */
 
     @GetMapping
     public ResponseEntity<List<FileMetadata>> getByFolder(@RequestParam Long folderId) {
-        List<FileMetadata> list = fileRepo.findAll().stream()
-                .filter(f -> Objects.equals(f.getFolderId(), folderId))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(list);
+        return ResponseEntity.ok(fileRepo.findByFolderId(folderId));
     }
 
     /* ---------- create (metadata + file‑dir) ---------- */
@@ -42,10 +39,8 @@ public class FilesController {
             String filename = req.getFilename();            // e.g. hamza1.rb
             String ext      = filename.substring(filename.lastIndexOf("."));
 
-            FileMetadata meta = fileRepo.findAll().stream()
-                    .filter(f -> f.getFilename().equals(filename)
-                            && Objects.equals(f.getFolderId(), req.getFolderId()))
-                    .findFirst()
+            FileMetadata meta = fileRepo
+                    .findByFolderIdAndFilename(req.getFolderId(), filename)
                     .orElseGet(() -> fileRepo.save(
                             FileMetadataFactory.createFileMetadata(
                                     filename, "anonymous", req.getFolderId())));
@@ -69,6 +64,13 @@ public class FilesController {
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteFile(@PathVariable String id) {
         try {
+            // the snapshots go first, so a failed delete leaves the file listed and retryable
+            fileRepo.findById(id).ifPresent(meta ->
+                folderRepo.findById(meta.getFolderId()).ifPresent(folder -> {
+                    String fileDir = meta.getId() + "-" + meta.getFilename().replace('.', '-');
+                    fsClient.deleteFileDir(folder.getProjectId(), fileDir);
+                    latestCache.invalidate(folder.getProjectId(), fileDir);
+                }));
             fileRepo.deleteById(id);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
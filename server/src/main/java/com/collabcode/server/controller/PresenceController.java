@@ -0,0 +1,33 @@
+package com.collabcode.server.controller;
+
+import com.collabcode.server.service.PresenceService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  –  GET /api/presence/{fileId}        → users editing a file
+ *  –  GET /api/presence?fileIds=a,b,... → number of users editing each file
+ */
+@RestController
+@RequestMapping("/api/presence")
+public class PresenceController {
+
+    private final PresenceService presence;
+
+    public PresenceController(PresenceService presence) {
+        this.presence = presence;
+    }
+
+    @GetMapping("/{fileId}")
+    public ResponseEntity<PresenceService.FilePresence> file(@PathVariable String fileId) {
+        return ResponseEntity.ok(presence.presence(fileId));
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Integer>> counts(@RequestParam List<String> fileIds) {
+        return ResponseEntity.ok(presence.counts(fileIds));
+    }
+}
@@ -5,20 +5,20 @@ import com.collabcode.server.entity.Folder;
 import com.collabcode.server.entity.Project;
 import com.collabcode.server.repository.FileMetadataRepository;
 import com.collabcode.server.repository.FolderRepository;
+import com.collabcode.server.service.FileSystemClient;
 import com.collabcode.server.service.FolderService;
+import com.collabcode.server.service.LatestContentFetcher;
 import com.collabcode.server.service.ProjectService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,9 +29,7 @@ import java.util.zip.ZipOutputStream;
 
 
 
-import org.springframework.core.io.Resource;
 import org.springframework.http.*;
-import java.nio.file.*;
 
 
 @RestController
@@ -46,11 +44,8 @@ public class ProjectController {
     @Autowired private FolderService folderService;
     @Autowired private FilesController filesController;
     @Autowired private CodeController codeController;
-    
-    @Value("${filesystem.service.url}")
-    private String fsUrl;
-
-    private final RestTemplate rest = new RestTemplate();
+    @Autowired private LatestContentFetcher latestFetcher;
+    @Autowired private FileSystemClient fsClient;
 
     // Updated create endpoint to take OAuth2AuthenticationToken,
     // so that the authenticated user's GitHub ID is used.
@@ -95,25 +90,11 @@ public class ProjectController {
             String userId = auth.getPrincipal().getAttribute("id").toString();
 
             List<Folder> originalFolders = folderRepo.findByProjectId(id);
+            Map<Long, Folder> originalFolderById = indexById(originalFolders);
+            List<FileMetadata> originalFiles = fileMetaRepo.findByFolderIdIn(originalFolderById.keySet());
 
-            List<FileMetadata> originalFiles = fileMetaRepo.findAll().stream()
-                    .filter(f -> originalFolders.stream().anyMatch(folder -> folder.getId().equals(f.getFolderId())))
-                    .toList();
-
-            Map<String, String> fileContentMap = new HashMap<>();
-            for (FileMetadata file : originalFiles) {
-                Long folderId = file.getFolderId();
-                Long projectId = folderRepo.findById(folderId).orElseThrow().getProjectId();
-                String fileDir = file.getId() + "-" + file.getFilename().replace('.', '-');
-                String url = fsUrl + "/latest?projectId=" + projectId + "&fileDir=" + fileDir;
-                try {
-                    ResponseEntity<CodeController.LatestResponse> response = rest.getForEntity(url, CodeController.LatestResponse.class);
-                    if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                        fileContentMap.put(file.getFilename(), response.getBody().getContent());
-                    }
-                } catch (Exception e) {
-                }
-            }
+            Map<String, CodeController.LatestResponse> latestRefs =
+                latestFetcher.fetchLatestRefs(originalFiles, originalFolderById);
 
             Project original = projectService.getById(id);
             Project newProject = new Project();
@@ -138,20 +119,23 @@ public class ProjectController {
             for (FileMetadata file : originalFiles) {
                 Long newFolderId = folderMap.get(file.getFolderId());
                 String filename = file.getFilename();
-                String content = fileContentMap.getOrDefault(filename, "");
+                CodeController.LatestResponse latest = latestRefs.get(file.getId());
 
                 FilesController.FileCreationRequest req = new FilesController.FileCreationRequest();
                 req.setFilename(filename);
                 req.setFolderId(newFolderId);
-                req.setCode(content);
+                req.setCode("");
                 FilesController.FileCreationResponse response = (FilesController.FileCreationResponse) filesController.createFile(req).getBody();
-                if (response != null) {
+                if (response != null && latest != null) {
+                    saveCopy(savedProject.getId(), newFolderId, filename, response, latest,
+                             "forked from project " + id, auth);
+                } else if (response != null) {
                     CodeController.CodeRequest saveReq = new CodeController.CodeRequest();
                     saveReq.setFilename(filename);
                     saveReq.setFolderId(newFolderId);
-                    saveReq.setCode(content);
                     saveReq.setSummary("forked from project " + id);
-                    codeController.save(saveReq, auth);
+                    saveReq.setCode("");
+                    codeController.save(saveReq, null, auth);
                 }
             }
 
@@ -183,23 +167,10 @@ public class ProjectController {
             allFolders.addAll(folders1);
             allFolders.addAll(folders2);
 
-            List<FileMetadata> files = fileMetaRepo.findAll().stream()
-                .filter(f -> allFolders.stream().anyMatch(folder -> folder.getId().equals(f.getFolderId())))
-                .toList();
+            Map<Long, Folder> folderById = indexById(allFolders);
+            List<FileMetadata> files = fileMetaRepo.findByFolderIdIn(folderById.keySet());
 
-            Map<String, String> fileContents = new HashMap<>();
-            for (FileMetadata file : files) {
-                Long projectId = folderRepo.findById(file.getFolderId()).orElseThrow().getProjectId();
-                String fileDir = file.getId() + "-" + file.getFilename().replace('.', '-');
-                String url = fsUrl + "/latest?projectId=" + projectId + "&fileDir=" + fileDir;
-                try {
-                    ResponseEntity<CodeController.LatestResponse> rsp =
-                        rest.getForEntity(url, CodeController.LatestResponse.class);
-                    if (rsp.getStatusCode().is2xxSuccessful() && rsp.getBody() != null) {
-                        fileContents.put(file.getId(), rsp.getBody().getContent());
-                    }
-                } catch (Exception ignored) {}
-            }
+            Map<String, CodeController.LatestResponse> latestRefs = latestFetcher.fetchLatestRefs(files, folderById);
 
            
             Project newProject = new Project();
@@ -239,7 +210,8 @@ public class ProjectController {
             for (FileMetadata file : files) {
                 Long newFolderId = folderMap.get(file.getFolderId());
                 String originalName = file.getFilename();
-                String folderName = folderRepo.findById(file.getFolderId()).map(Folder::getName).orElse("default");
+                Folder sourceFolder = folderById.get(file.getFolderId());
+                String folderName = sourceFolder != null ? sourceFolder.getName() : "default";
                 String versionKey = originalName + "::" + folderName;
                 
                 int version = fileNameCounts.getOrDefault(versionKey, 0) + 1;
@@ -263,13 +235,10 @@ public class ProjectController {
                 FilesController.FileCreationResponse resp = (FilesController.FileCreationResponse)
                         filesController.createFile(req).getBody();
 
-                if (resp != null && fileContents.containsKey(file.getId())) {
-                    CodeController.CodeRequest saveReq = new CodeController.CodeRequest();
-                    saveReq.setFilename(newName);
-                    saveReq.setFolderId(newFolderId);
-                    saveReq.setCode(fileContents.get(file.getId()));
-                    saveReq.setSummary("merged from project " + file.getFolderId());
-                    codeController.save(saveReq, auth);
+                CodeController.LatestResponse latest = latestRefs.get(file.getId());
+                if (resp != null && latest != null) {
+                    saveCopy(savedProject.getId(), newFolderId, newName, resp, latest,
+                             "merged from project " + file.getFolderId(), auth);
                 }
             }
 
@@ -286,50 +255,83 @@ public class ProjectController {
         public void setOtherProjectId(Long otherProjectId) { this.otherProjectId = otherProjectId; }
     }
 
+    /**
+     * Streams the project as a zip straight into the response. Each file's
+     * latest snapshot is pulled from the filesystem service as a byte stream
+     * while its entry is written, so memory use does not grow with project size.
+     * It is not read from the latest-snapshot cache: this node may not be the
+     * one the file is routed to, and its cached copy may be stale.
+     * A file that cannot be read aborts the download without finishing the
+     * zip, so the client sees a failed download rather than a truncated file.
+     */
     @GetMapping("/{id}/download")
-        public ResponseEntity<Resource> downloadProject(@PathVariable Long id) throws IOException {
+    public ResponseEntity<StreamingResponseBody> downloadProject(@PathVariable Long id) {
         Project project = projectService.getById(id);
-        List<Folder> folders = folderRepo.findByProjectId(id);
-        List<FileMetadata> files = fileMetaRepo.findAll().stream()
-            .filter(f -> folders.stream().anyMatch(folder -> folder.getId().equals(f.getFolderId())))
-            .toList();
-
-        Map<Long, Folder> folderMap = folders.stream().collect(Collectors.toMap(Folder::getId, f -> f));
+        Map<Long, Folder> folderMap = indexById(folderRepo.findByProjectId(id));
+        List<FileMetadata> files = fileMetaRepo.findByFolderIdIn(folderMap.keySet());
 
-        
-        Path zipPath = Files.createTempFile("project-", ".zip");
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+        StreamingResponseBody body = out -> {
+            // not closed on failure: close() would write the central directory
+            // and turn a half-written entry into a valid-looking zip
+            ZipOutputStream zos = new ZipOutputStream(out);
             for (FileMetadata file : files) {
                 Folder folder = folderMap.get(file.getFolderId());
                 String folderPath = folder != null ? folder.getName() : "unknown-folder";
-                String fileName = file.getFilename();
-                String zipEntryPath = folderPath + "/" + fileName;
-
+                String zipEntryPath = folderPath + "/" + file.getFilename();
                 String fileDir = file.getId() + "-" + file.getFilename().replace('.', '-');
-                String url = fsUrl + "/latest?projectId=" + id + "&fileDir=" + fileDir;
-
-                String content = "";
-                try {
-                    ResponseEntity<CodeController.LatestResponse> rsp =
-                        rest.getForEntity(url, CodeController.LatestResponse.class);
-                    if (rsp.getStatusCode().is2xxSuccessful() && rsp.getBody() != null) {
-                        content = rsp.getBody().getContent();
-                    }
-                } catch (Exception ignored) {}
 
-                ZipEntry entry = new ZipEntry(zipEntryPath);
-                zos.putNextEntry(entry);
-                zos.write(content.getBytes(StandardCharsets.UTF_8));
+                zos.putNextEntry(new ZipEntry(zipEntryPath));
+                try (InputStream in = fsClient.openLatest(id, fileDir)) {
+                    if (in != null) in.transferTo(zos);
+                } catch (Exception e) {
+                    throw new IOException("Download of project " + id + " failed at " + zipEntryPath, e);
+                }
                 zos.closeEntry();
             }
-        }
+            zos.close();
+        };
 
-        FileSystemResource resource = new FileSystemResource(zipPath.toFile());
         return ResponseEntity.ok()
             .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + project.getName().replaceAll(" ", "_") + "-clone.zip\"")
             .contentType(MediaType.APPLICATION_OCTET_STREAM)
-            .contentLength(resource.contentLength())
-            .body(resource);
+            .body(body);
+    }
+
+    /**
+     * Saves the first snapshot of a copied file by linking it to the source's
+     * latest snapshot. Linking stays server-side, so only snapshots resolved
+     * here are ever copied by reference. If the link fails (e.g. the source
+     * predates the blob store and is unreadable as a reference), the content
+     * is copied instead.
+     */
+    private void saveCopy(Long projectId, Long folderId, String filename,
+                          FilesController.FileCreationResponse created,
+                          CodeController.LatestResponse source, String summary,
+                          OAuth2AuthenticationToken auth) throws Exception {
+        String fileDir = created.getFileId() + "-" + filename.replace('.', '-');
+        String rel     = projectId + "/" + fileDir + "/" + created.getSnapshotName();
+        try {
+            fsClient.linkSnapshot(created.getFileId(), rel, source.getSnapshotName(), author(auth), summary);
+        } catch (Exception e) {
+            CodeController.CodeRequest saveReq = new CodeController.CodeRequest();
+            saveReq.setFilename(filename);
+            saveReq.setFolderId(folderId);
+            saveReq.setSummary(summary);
+            saveReq.setCode(fsClient.getFileContent(source.getSnapshotName()));
+            codeController.save(saveReq, null, auth);
+        }
     }
 
+    private static String author(OAuth2AuthenticationToken auth) {
+        if (auth != null && auth.getPrincipal() != null) {
+            Object login = auth.getPrincipal().getAttribute("login");
+            if (login != null) return login.toString();
+        }
+        return "anonymous";
+    }
+
+    /** Folders keyed by id, so per-file folder lookups stay in memory. */
+    private static Map<Long, Folder> indexById(List<Folder> folders) {
+        return folders.stream().collect(Collectors.toMap(Folder::getId, f -> f));
+    }
 }
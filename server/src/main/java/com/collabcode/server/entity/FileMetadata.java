@@ -2,9 +2,18 @@ package com.collabcode.server.entity;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(
+    name = "file_metadata",
+    uniqueConstraints = @UniqueConstraint(
+        name = "uk_file_metadata_folder_filename",
+        columnNames = {"folder_id", "filename"}
+    )
+)
 public class FileMetadata {
 
     @Id
@@ -3,5 +3,16 @@ package com.collabcode.server.repository;
 import com.collabcode.server.entity.FileMetadata;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface FileMetadataRepository extends JpaRepository<FileMetadata, String> {}
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
+/**
+ * Lookups go through the (folder_id, filename) index declared on FileMetadata,
+ * so callers should never need findAll() to locate a file.
+ */
+public interface FileMetadataRepository extends JpaRepository<FileMetadata, String> {
+    Optional<FileMetadata> findByFolderIdAndFilename(Long folderId, String filename);
+    List<FileMetadata> findByFolderId(Long folderId);
+    List<FileMetadata> findByFolderIdIn(Collection<Long> folderIds);
+}
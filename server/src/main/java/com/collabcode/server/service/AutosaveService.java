@@ -0,0 +1,329 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.CodeController;
+import com.collabcode.server.entity.FileMetadata;
+import com.collabcode.server.entity.User;
+import com.collabcode.server.repository.FileMetadataRepository;
+import com.collabcode.server.repository.FolderRepository;
+import com.collabcode.server.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind persistence of live documents. Accepted operations only mark
+ * their file dirty; a file is written as one snapshot once it has been idle
+ * for {@code autosave.idle-ms}, or at the latest {@code autosave.max-ms} after
+ * its first unsaved edit, so a burst of keystrokes costs one save instead of
+ * one per edit.
+ *
+ * Writes run on {@code autosave.writers} threads with a queue of
+ * {@code autosave.queue-capacity}. When the queue is full a due file simply
+ * stays dirty and keeps coalescing until a later tick, and a file never has
+ * more than one write queued. Files are flushed when their last editor leaves
+ * and on shutdown.
+ */
+@Service
+public class AutosaveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutosaveService.class);
+    private static final DateTimeFormatter SNAPSHOT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final FileMetadataRepository metaRepo;
+    private final FolderRepository folderRepo;
+    private final UserRepository userRepo;
+    private final FileSystemClient fsClient;
+    private final LatestSnapshotCache latestCache;
+    private final Clock clock;
+    private final long idleMillis;
+    private final long maxMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor writers;
+    private final ScheduledExecutorService ticker;
+
+    private final Counter saved;
+    private final Counter unchanged;
+    private final Counter failed;
+    private final Counter deferred;
+    private final DistributionSummary opsPerSave;
+
+    @Autowired
+    public AutosaveService(FileMetadataRepository metaRepo,
+                           FolderRepository folderRepo,
+                           UserRepository userRepo,
+                           FileSystemClient fsClient,
+                           LatestSnapshotCache latestCache,
+                           MeterRegistry registry,
+                           @Value("${autosave.idle-ms:2000}") long idleMillis,
+                           @Value("${autosave.max-ms:30000}") long maxMillis,
+                           @Value("${autosave.writers:2}") int writerThreads,
+                           @Value("${autosave.queue-capacity:64}") int queueCapacity) {
+        this(metaRepo, folderRepo, userRepo, fsClient, latestCache, registry, Clock.systemDefaultZone(),
+             idleMillis, maxMillis, writerThreads, queueCapacity);
+    }
+
+    AutosaveService(FileMetadataRepository metaRepo,
+                    FolderRepository folderRepo,
+                    UserRepository userRepo,
+                    FileSystemClient fsClient,
+                    LatestSnapshotCache latestCache,
+                    MeterRegistry registry,
+                    Clock clock,
+                    long idleMillis,
+                    long maxMillis,
+                    int writerThreads,
+                    int queueCapacity) {
+        this.metaRepo    = metaRepo;
+        this.folderRepo  = folderRepo;
+        this.userRepo    = userRepo;
+        this.fsClient    = fsClient;
+        this.latestCache = latestCache;
+        this.clock       = clock;
+        this.idleMillis  = idleMillis;
+        this.maxMillis   = maxMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "autosave-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "autosave-tick");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.saved      = Counter.builder("autosave.flushes").tag("result", "saved").register(registry);
+        this.unchanged  = Counter.builder("autosave.flushes").tag("result", "unchanged").register(registry);
+        this.failed     = Counter.builder("autosave.flushes").tag("result", "failed").register(registry);
+        this.deferred   = Counter.builder("autosave.deferred").register(registry);
+        this.opsPerSave = DistributionSummary.builder("autosave.ops.per.snapshot").register(registry);
+        Gauge.builder("autosave.dirty.files", this, AutosaveService::dirtyFiles).register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long period = Math.max(50, Math.min(500, idleMillis / 4));
+        ticker.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records an operation accepted by a live document. */
+    public void edited(CollaborativeDocument doc, String userId) {
+        entries.compute(doc.getFileId(), (id, entry) -> {
+            if (entry == null) return new Entry(doc);
+            if (entry.doc == doc) return entry;
+            // an entry kept after a failed close belongs to the closed document;
+            // the file was reopened from its unsaved content, which now goes with the new one
+            return entry.movedTo(doc, clock.millis());
+        }).touch(userId, clock.millis());
+    }
+
+    /**
+     * Content of a file whose live document was closed while its last edits
+     * could not be saved; a reopened document starts from it, not from the
+     * older latest snapshot.
+     */
+    public Optional<String> unsaved(String fileId) {
+        Entry entry = entries.get(fileId);
+        if (entry == null || !entry.isDirty()) return Optional.empty();
+        return Optional.of(entry.doc.state().content());
+    }
+
+    /**
+     * Writes a file's unsaved edits now and stops tracking it. Called when
+     * its live document is closed; blocks until the snapshot is written. If
+     * the write fails the edits are kept and retried like any other.
+     */
+    public void close(String fileId) {
+        Entry entry = entries.remove(fileId);
+        if (entry == null) return;
+        write(fileId, entry);
+        if (entry.isDirty()) entries.putIfAbsent(fileId, entry);
+    }
+
+    /** Queues a write of every file that has been idle or dirty for long enough. */
+    void tick() {
+        long now = clock.millis();
+        entries.forEach((fileId, entry) -> {
+            if (!entry.claimIfDue(now, idleMillis, maxMillis)) return;
+            try {
+                writers.execute(() -> write(fileId, entry));
+            } catch (RejectedExecutionException e) {
+                // writers are saturated; the file stays dirty and coalesces further
+                entry.release();
+                deferred.increment();
+            }
+        });
+    }
+
+    int dirtyFiles() {
+        return (int) entries.values().stream().filter(Entry::isDirty).count();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ticker.shutdownNow();
+        writers.shutdown();
+        if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("Autosave writers did not finish in time");
+        }
+        entries.forEach(this::write);
+        entries.clear();
+    }
+
+    /* ---------- internals ---------- */
+
+    private void write(String fileId, Entry entry) {
+        // one write per file at a time, so snapshots land in revision order
+        synchronized (entry.writeLock) {
+            Entry.Batch batch = entry.take();
+            if (batch == null) return;
+
+            CollaborativeDocument.State state = entry.doc.state();
+            if (state.revision() <= entry.savedRevision) return;
+            try {
+                if (persist(fileId, state.content(), batch.userId())) {
+                    saved.increment();
+                    opsPerSave.record(batch.ops());
+                } else {
+                    unchanged.increment();
+                }
+                entry.savedRevision = state.revision();
+            } catch (Exception e) {
+                failed.increment();
+                entry.restore(batch, clock.millis());
+                logger.warn("Autosave of file {} failed: {}", fileId, e.getMessage());
+            }
+        }
+    }
+
+    /** @return false if the content equals the latest snapshot and nothing was written. */
+    private boolean persist(String fileId, String content, String userId) throws Exception {
+        FileMetadata meta = metaRepo.findById(fileId)
+            .orElseThrow(() -> new IllegalArgumentException("File not found: " + fileId));
+        Long projectId = folderRepo.findById(meta.getFolderId())
+            .orElseThrow(() -> new IllegalArgumentException("Folder not found: " + meta.getFolderId()))
+            .getProjectId();
+        String fileDir = meta.getId() + "-" + meta.getFilename().replace('.', '-');
+
+        String contentHash = ContentHash.sha256(content);
+        CodeController.LatestResponse previous = latestCache.get(projectId, fileDir);
+        if (previous == null) previous = fsClient.getLatestHash(projectId, fileDir);
+        if (previous != null && contentHash.equals(previous.getContentHash())) return false;
+
+        String filename = meta.getFilename();
+        String ext  = filename.contains(".") ? filename.substring(filename.lastIndexOf('.')) : "";
+        String snap = meta.getId() + "_" + LocalDateTime.now(clock).format(SNAPSHOT_TIME) + ext;
+        String rel  = projectId + "/" + fileDir + "/" + snap;
+
+        String author = userId == null ? "anonymous"
+            : userRepo.findById(userId).map(User::getUsername).orElse("anonymous");
+        fsClient.saveSnapshot(meta.getId(), rel, content, author, "autosave");
+        latestCache.put(projectId, fileDir, new CodeController.LatestResponse(rel, content, contentHash));
+        return true;
+    }
+
+    /** Unsaved edits of one live document. */
+    private static final class Entry {
+        final CollaborativeDocument doc;
+        final Object writeLock = new Object();
+        /** Guarded by writeLock. */
+        int savedRevision = -1;
+
+        private boolean dirty;
+        private boolean queued;
+        private long firstEdit;
+        private long lastEdit;
+        private int ops;
+        private String userId;
+
+        Entry(CollaborativeDocument doc) {
+            this.doc = doc;
+        }
+
+        record Batch(long firstEdit, int ops, String userId) { }
+
+        synchronized void touch(String userId, long now) {
+            if (!dirty) {
+                dirty = true;
+                firstEdit = now;
+            }
+            lastEdit = now;
+            ops++;
+            if (userId != null) this.userId = userId;
+        }
+
+        synchronized boolean claimIfDue(long now, long idleMillis, long maxMillis) {
+            if (!dirty || queued) return false;
+            if (now - lastEdit < idleMillis && now - firstEdit < maxMillis) return false;
+            queued = true;
+            return true;
+        }
+
+        synchronized void release() {
+            queued = false;
+        }
+
+        /** Takes the pending edits for a write; edits made from now on start a new batch. */
+        synchronized Batch take() {
+            queued = false;
+            if (!dirty) return null;
+            dirty = false;
+            Batch batch = new Batch(firstEdit, ops, userId);
+            ops = 0;
+            return batch;
+        }
+
+        /**
+         * Puts back the edits of a failed write. They are retried with the next
+         * batch, which starts over as if edited now so a failing filesystem is
+         * retried once per idle window rather than on every tick.
+         */
+        synchronized void restore(Batch batch, long now) {
+            if (!dirty) {
+                dirty = true;
+                firstEdit = now;
+            }
+            lastEdit = Math.max(lastEdit, now);
+            ops += batch.ops();
+            if (userId == null) userId = batch.userId();
+        }
+
+        synchronized boolean isDirty() {
+            return dirty;
+        }
+
+        /** A new entry for doc holding the edits this one has not saved. */
+        synchronized Entry movedTo(CollaborativeDocument doc, long now) {
+            Entry moved = new Entry(doc);
+            if (dirty) moved.restore(new Batch(firstEdit, ops, userId), now);
+            dirty = false;
+            return moved;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class CodeExecutionService {
@@ -30,6 +31,18 @@ public class CodeExecutionService {
         return executorRouterService.forwardToExecutor(lang, code);
     }
 
+    /** Runs a snapshot, passing its output to the consumer as it comes; returns the exit status. */
+    public int stream(String fileId, String snapshotName, Consumer<String> output) throws Exception {
+        Optional<FileMetadata> meta = metadataRepo.findById(fileId);
+        if (meta.isEmpty()) throw new RuntimeException("File metadata not found");
+
+        String code = fileSystemClient.getFileContent(snapshotName);
+
+        String lang = getLangFromExtension(meta.get().getFilename());
+
+        return executorRouterService.streamToExecutor(lang, code, output);
+    }
+
     private String getLangFromExtension(String filename) {
         if (filename.endsWith(".java")) return "java";
         if (filename.endsWith(".py")) return "python";
@@ -0,0 +1,85 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.entity.FileMetadata;
+import com.collabcode.server.entity.Folder;
+import com.collabcode.server.repository.FileMetadataRepository;
+import com.collabcode.server.repository.FolderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live documents of the files currently being edited, keyed by fileId. A
+ * document is loaded when its first editor subscribes, from the file's latest
+ * snapshot or from edits a closed document could not save yet. While open it
+ * only changes through {@link CollaborativeDocument#apply}, and it is dropped
+ * when its last editor leaves.
+ */
+@Service
+public class CollaborationService {
+
+    private final FileMetadataRepository metaRepo;
+    private final FolderRepository folderRepo;
+    private final LatestContentFetcher latestFetcher;
+    private final AutosaveService autosave;
+    private final int historySize;
+    private final Map<String, CollaborativeDocument> documents = new ConcurrentHashMap<>();
+
+    public CollaborationService(FileMetadataRepository metaRepo,
+                                FolderRepository folderRepo,
+                                LatestContentFetcher latestFetcher,
+                                AutosaveService autosave,
+                                @Value("${collab.history-size:1000}") int historySize) {
+        this.metaRepo      = metaRepo;
+        this.folderRepo    = folderRepo;
+        this.latestFetcher = latestFetcher;
+        this.autosave      = autosave;
+        this.historySize   = historySize;
+    }
+
+    /**
+     * The live document of a file, loaded from its latest snapshot if no one
+     * has edited it yet.
+     *
+     * @throws IllegalStateException if the file's content could not be loaded
+     */
+    public CollaborativeDocument document(String fileId) {
+        CollaborativeDocument doc = documents.get(fileId);
+        if (doc != null) return doc;
+        // loaded outside the map so a slow filesystem does not hold up other files;
+        // of two concurrent loads the first one stored wins
+        CollaborativeDocument loaded = new CollaborativeDocument(fileId, loadLatest(fileId), historySize);
+        doc = documents.putIfAbsent(fileId, loaded);
+        return doc != null ? doc : loaded;
+    }
+
+    /** The live state of a file if someone is editing it, without loading it otherwise. */
+    public Optional<CollaborativeDocument.State> live(String fileId) {
+        return Optional.ofNullable(documents.get(fileId)).map(CollaborativeDocument::state);
+    }
+
+    /** Drops the live document of a file that no one is editing any more. */
+    public void close(String fileId) {
+        documents.remove(fileId);
+    }
+
+    private String loadLatest(String fileId) {
+        // edits of a previous document that autosave could not write yet are newer than any snapshot
+        Optional<String> unsaved = autosave.unsaved(fileId);
+        if (unsaved.isPresent()) return unsaved.get();
+
+        FileMetadata meta = metaRepo.findById(fileId)
+            .orElseThrow(() -> new IllegalArgumentException("File not found: " + fileId));
+        Folder folder = folderRepo.findById(meta.getFolderId())
+            .orElseThrow(() -> new IllegalArgumentException("Folder not found: " + meta.getFolderId()));
+        try {
+            return latestFetcher.fetchLatest(meta, folder);
+        } catch (Exception e) {
+            // an empty document would be edited and autosaved over the real content
+            throw new IllegalStateException("Could not load file " + fileId + ": " + e.getMessage(), e);
+        }
+    }
+}
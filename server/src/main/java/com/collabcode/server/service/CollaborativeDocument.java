@@ -0,0 +1,80 @@
+package com.collabcode.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The server's authoritative copy of a file being edited live.
+ *
+ * Every accepted operation gets the next revision number. A client submits an
+ * operation against the revision it last saw; operations accepted since then
+ * are looked up in a bounded history and the new operation is transformed
+ * past them before it is applied, so concurrent edits converge instead of
+ * overwriting each other. The text is held in a {@link Rope}, so applying a
+ * keystroke does not copy the whole file.
+ */
+public class CollaborativeDocument {
+
+    private final String fileId;
+    private final int maxHistory;
+    private final List<TextOperation> history = new ArrayList<>();
+    private Rope content;
+    private int revision;
+    /** Revision produced by history.get(0), i.e. revision - history.size() + 1. */
+    private int historyStart = 1;
+
+    public CollaborativeDocument(String fileId, String content, int maxHistory) {
+        this.fileId     = fileId;
+        this.content    = Rope.of(content);
+        this.maxHistory = maxHistory;
+    }
+
+    /** An accepted operation, transformed to apply on top of the previous revision. */
+    public record Applied(int revision, TextOperation operation) { }
+
+    /** Content of the document at a revision. */
+    public record State(String content, int revision) { }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public State state() {
+        Rope text;
+        int rev;
+        synchronized (this) {
+            text = content;
+            rev  = revision;
+        }
+        // the rope is immutable, so it can be flattened without holding the lock
+        return new State(text.toString(), rev);
+    }
+
+    /**
+     * Transforms an operation made against baseRevision past everything accepted
+     * since, and applies it.
+     *
+     * @throws IllegalStateException if baseRevision is newer than the document or
+     *         too old to still be in the history; the client has to resync.
+     * @throws IllegalArgumentException if the operation does not fit the document.
+     */
+    public synchronized Applied apply(int baseRevision, TextOperation op) {
+        if (baseRevision > revision) {
+            throw new IllegalStateException("revision " + baseRevision + " is ahead of " + revision);
+        }
+        if (baseRevision < historyStart - 1) {
+            throw new IllegalStateException("revision " + baseRevision + " is no longer in the history");
+        }
+        for (int r = baseRevision + 1; r <= revision; r++) {
+            op = TextOperation.transform(op, history.get(r - historyStart))[0];
+        }
+        content = op.apply(content);
+        revision++;
+        history.add(op);
+        if (history.size() > maxHistory) {
+            history.subList(0, history.size() - maxHistory).clear();
+            historyStart = revision - history.size() + 1;
+        }
+        return new Applied(revision, op);
+    }
+}
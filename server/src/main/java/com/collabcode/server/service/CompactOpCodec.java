@@ -0,0 +1,181 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.FileEditWebSocketController.EditMessage;
+import org.springframework.util.MimeType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact encoding of OT traffic, content type {@code text/x-collab-op},
+ * written and parsed by hand instead of through Jackson. SockJS frames are
+ * text, so it is a text format: tab-separated fields, numbers in base 36,
+ * and operations as a run of components with no separators:
+ *
+ * <pre>
+ *   R&lt;n&gt;            retain n
+ *   D&lt;n&gt;            delete n
+ *   I&lt;len&gt;:&lt;text&gt;   insert text of len chars
+ * </pre>
+ *
+ * An OP sent by a client is {@code OP \t fileId \t userId \t opId \t revision \t ops}.
+ * A batch broadcast to clients is a line {@code OPS \t fileId \t count}, followed by one
+ * entry per edit, each starting with a newline: {@code OP \t userId \t opId \t revision \t ops}
+ * or {@code RESYNC \t userId \t opId \t <len>:<text>}. Ids never contain tabs or newlines.
+ */
+public final class CompactOpCodec {
+
+    public static final MimeType MIME_TYPE = new MimeType("text", "x-collab-op");
+
+    private CompactOpCodec() { }
+
+    public static EditMessage decodeOp(String frame) {
+        Reader in = new Reader(frame);
+        if (!"OP".equals(in.field())) throw new IllegalArgumentException("not an OP frame");
+        EditMessage message = new EditMessage();
+        message.setType("OP");
+        message.setFileId(in.field());
+        message.setUserId(in.field());
+        message.setOpId(in.field());
+        message.setRevision(in.number());
+        in.expect('\t');
+        message.setOps(in.ops());
+        in.end();
+        return message;
+    }
+
+    public static String encodeOp(EditMessage message) {
+        StringBuilder out = new StringBuilder(64);
+        out.append("OP\t").append(message.getFileId())
+           .append('\t').append(message.getUserId())
+           .append('\t').append(message.getOpId())
+           .append('\t').append(Integer.toString(message.getRevision(), 36))
+           .append('\t');
+        appendOps(out, message.getOps());
+        return out.toString();
+    }
+
+    /** Encodes the OP and RESYNC messages of a batch. */
+    public static String encodeBatch(String fileId, List<?> edits) {
+        StringBuilder out = new StringBuilder(32 + 48 * edits.size());
+        out.append("OPS\t").append(fileId).append('\t').append(Integer.toString(edits.size(), 36));
+        for (Object edit : edits) {
+            EditMessage message = (EditMessage) edit;
+            out.append('\n');
+            if ("OP".equals(message.getType())) {
+                out.append("OP\t").append(message.getUserId())
+                   .append('\t').append(message.getOpId())
+                   .append('\t').append(Integer.toString(message.getRevision(), 36))
+                   .append('\t');
+                appendOps(out, message.getOps());
+            } else if ("RESYNC".equals(message.getType())) {
+                String text = message.getText() == null ? "" : message.getText();
+                out.append("RESYNC\t").append(message.getUserId())
+                   .append('\t').append(message.getOpId())
+                   .append('\t').append(Integer.toString(text.length(), 36)).append(':').append(text);
+            } else {
+                throw new IllegalArgumentException("cannot encode a " + message.getType() + " message");
+            }
+        }
+        return out.toString();
+    }
+
+    /** Decodes a batch back into its messages; the inverse of {@link #encodeBatch}. */
+    public static List<EditMessage> decodeBatch(String frame) {
+        Reader in = new Reader(frame);
+        if (!"OPS".equals(in.field())) throw new IllegalArgumentException("not an OPS frame");
+        String fileId = in.field();
+        int count = in.number();
+        List<EditMessage> edits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            in.expect('\n');
+            EditMessage message = new EditMessage();
+            message.setType(in.field());
+            message.setFileId(fileId);
+            message.setUserId(in.field());
+            message.setOpId(in.field());
+            if ("OP".equals(message.getType())) {
+                message.setRevision(in.number());
+                in.expect('\t');
+                message.setOps(in.ops());
+            } else {
+                message.setText(in.text());
+            }
+            edits.add(message);
+        }
+        in.end();
+        return edits;
+    }
+
+    /* ---------- internals ---------- */
+
+    private static void appendOps(StringBuilder out, List<Object> ops) {
+        for (Object c : ops) {
+            if (c instanceof String s) {
+                out.append('I').append(Integer.toString(s.length(), 36)).append(':').append(s);
+            } else {
+                int n = ((Number) c).intValue();
+                out.append(n > 0 ? 'R' : 'D').append(Integer.toString(Math.abs(n), 36));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final String s;
+        private int pos;
+
+        Reader(String s) {
+            this.s = s;
+        }
+
+        /** Text up to the next tab, which is consumed, or up to a newline or the end. */
+        String field() {
+            int end = pos;
+            while (end < s.length() && s.charAt(end) != '\t' && s.charAt(end) != '\n') end++;
+            String field = s.substring(pos, end);
+            pos = end < s.length() && s.charAt(end) == '\t' ? end + 1 : end;
+            return field;
+        }
+
+        /** A base 36 number; its digits are lowercase, so it ends at a component tag. */
+        int number() {
+            int start = pos;
+            while (pos < s.length() && Character.digit(s.charAt(pos), 36) >= 0
+                   && !Character.isUpperCase(s.charAt(pos))) pos++;
+            if (start == pos) throw new IllegalArgumentException("number expected at " + start);
+            return Integer.parseInt(s, start, pos, 36);
+        }
+
+        String text() {
+            int colon = s.indexOf(':', pos);
+            if (colon < 0) throw new IllegalArgumentException("length expected at " + pos);
+            int length = Integer.parseInt(s, pos, colon, 36);
+            pos = colon + 1 + length;
+            if (pos > s.length()) throw new IllegalArgumentException("text runs past the frame");
+            return s.substring(colon + 1, pos);
+        }
+
+        List<Object> ops() {
+            List<Object> ops = new ArrayList<>();
+            while (pos < s.length() && s.charAt(pos) != '\n') {
+                char tag = s.charAt(pos++);
+                switch (tag) {
+                    case 'R' -> ops.add(number());
+                    case 'D' -> ops.add(-number());
+                    case 'I' -> ops.add(text());
+                    default  -> throw new IllegalArgumentException("bad component '" + tag + "' at " + (pos - 1));
+                }
+            }
+            return ops;
+        }
+
+        void expect(char c) {
+            if (pos >= s.length() || s.charAt(pos) != c) throw new IllegalArgumentException("'" + c + "' expected at " + pos);
+            pos++;
+        }
+
+        void end() {
+            if (pos != s.length()) throw new IllegalArgumentException("trailing data at " + pos);
+        }
+    }
+}
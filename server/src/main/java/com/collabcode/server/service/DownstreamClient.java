@@ -0,0 +1,94 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls to one downstream service (the filesystem service, an executor)
+ * over the server's shared {@link HttpClient}, whose connections are pooled
+ * and kept alive across calls.
+ *
+ * A request gets the downstream's read timeout unless it sets its own, and
+ * is timed in {@code downstream.requests{downstream, outcome}} until its
+ * response headers arrive; a streamed body is not included.
+ */
+public class DownstreamClient {
+
+    private final HttpClient client;
+    private final MeterRegistry registry;
+    private final String name;
+    private final Duration readTimeout;
+
+    public DownstreamClient(HttpClient client, MeterRegistry registry, String name, Duration readTimeout) {
+        this.client      = client;
+        this.registry    = registry;
+        this.name        = name;
+        this.readTimeout = readTimeout;
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        if (request.timeout().isEmpty()) {
+            request = HttpRequest.newBuilder(request, (header, value) -> true).timeout(readTimeout).build();
+        }
+        long start = System.nanoTime();
+        String outcome = "ERROR";
+        try {
+            HttpResponse<T> response = client.send(request, handler);
+            outcome = outcome(response.statusCode());
+            return response;
+        } finally {
+            record(outcome, System.nanoTime() - start);
+        }
+    }
+
+    /** A request factory for RestTemplate over the same client and timeout. */
+    public ClientHttpRequestFactory requestFactory() {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+        factory.setReadTimeout(readTimeout);
+        return factory;
+    }
+
+    /** Times RestTemplate calls like {@link #send} does. */
+    public ClientHttpRequestInterceptor metrics() {
+        return (request, body, execution) -> {
+            long start = System.nanoTime();
+            String outcome = "ERROR";
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                outcome = outcome(response.getStatusCode().value());
+                return response;
+            } finally {
+                record(outcome, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /* ---------- internals ---------- */
+
+    private void record(String outcome, long nanos) {
+        Timer.builder("downstream.requests")
+             .tag("downstream", name)
+             .tag("outcome", outcome)
+             .publishPercentileHistogram()
+             .register(registry)
+             .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String outcome(int status) {
+        if (status >= 500) return "SERVER_ERROR";
+        if (status >= 400) return "CLIENT_ERROR";
+        return "SUCCESS";
+    }
+}
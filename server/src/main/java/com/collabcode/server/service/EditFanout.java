@@ -0,0 +1,181 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasts accepted edits to a file's subscribers in batches. Edits
+ * published within {@code collab.fanout.linger-ms} of each other are sent as
+ * one OPS frame holding them in order, and no edit waits longer than
+ * {@code collab.fanout.max-delay-ms}, so a busy file costs one frame per
+ * subscriber every few milliseconds instead of one per keystroke.
+ *
+ * Each session picks its encoding by where it subscribes: /topic/ops/{fileId}
+ * gets JSON, /topic/ops/{fileId}/compact gets {@link CompactOpCodec} frames.
+ * A batch is only encoded for the destinations that have subscribers here;
+ * JSON is also sent when there are none, for subscribers on other nodes.
+ *
+ * Frames are sent from a single thread, so each file's batches reach the
+ * broker in the order their edits were published.
+ */
+@Service
+public class EditFanout {
+
+    private static final String OPS_PREFIX = "/topic/ops/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long lingerNanos;
+    private final long maxDelayNanos;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    /** Local subscriptions per OPS destination. */
+    private final Map<String, Integer> subscribers = new ConcurrentHashMap<>();
+    /** sessionId to subscriptionId to OPS destination. */
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+
+    private final Counter jsonFrames;
+    private final Counter compactFrames;
+    private final DistributionSummary batchSize;
+
+    public EditFanout(SimpMessagingTemplate messagingTemplate,
+                      MeterRegistry registry,
+                      @Value("${collab.fanout.linger-ms:4}") long lingerMillis,
+                      @Value("${collab.fanout.max-delay-ms:16}") long maxDelayMillis) {
+        this.messagingTemplate = messagingTemplate;
+        this.lingerNanos       = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.maxDelayNanos     = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edit-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+        this.jsonFrames    = Counter.builder("collab.fanout.frames").tag("encoding", "json").register(registry);
+        this.compactFrames = Counter.builder("collab.fanout.frames").tag("encoding", "compact").register(registry);
+        this.batchSize     = DistributionSummary.builder("collab.fanout.batch.size").register(registry);
+    }
+
+    /** An OPS frame: edits of one file, oldest first. */
+    public record EditBatch(String type, String fileId, List<Object> edits) { }
+
+    /**
+     * Queues an edit for broadcast on /topic/ops/{fileId}. Callers publish
+     * a file's edits in the order they were accepted.
+     */
+    public void publish(String fileId, Object edit) {
+        long now = System.nanoTime();
+        batches.compute(fileId, (id, batch) -> {
+            if (batch == null) {
+                batch = new Batch(now);
+                schedule(id, lingerNanos);
+            }
+            batch.edits.add(edit);
+            batch.last = now;
+            return batch;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (destination == null || !destination.startsWith(OPS_PREFIX)) return;
+        subscriptions.computeIfAbsent(headers.getSessionId(), id -> new ConcurrentHashMap<>())
+                     .put(headers.getSubscriptionId(), destination);
+        subscribers.merge(destination, 1, Integer::sum);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> session = subscriptions.get(headers.getSessionId());
+        if (session == null) return;
+        String destination = session.remove(headers.getSubscriptionId());
+        if (destination != null) unsubscribed(destination);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> session = subscriptions.remove(event.getSessionId());
+        if (session != null) session.values().forEach(this::unsubscribed);
+    }
+
+    /* ---------- internals ---------- */
+
+    private static final class Batch {
+        final List<Object> edits = new ArrayList<>();
+        final long first;
+        long last;
+
+        Batch(long first) {
+            this.first = first;
+        }
+    }
+
+    private void unsubscribed(String destination) {
+        subscribers.computeIfPresent(destination, (d, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private void schedule(String fileId, long delayNanos) {
+        timer.schedule(() -> flush(fileId), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Sends a file's batch once it has lingered long enough, else waits a little more. */
+    private void flush(String fileId) {
+        long now = System.nanoTime();
+        List<List<Object>> ready = new ArrayList<>(1);
+        batches.computeIfPresent(fileId, (id, batch) -> {
+            long deadline = Math.min(batch.last + lingerNanos, batch.first + maxDelayNanos);
+            if (deadline > now) {
+                schedule(id, deadline - now);
+                return batch;
+            }
+            ready.add(batch.edits);
+            return null;
+        });
+        if (ready.isEmpty()) return;
+
+        List<Object> edits = ready.get(0);
+        String json = OPS_PREFIX + fileId;
+        String compact = json + "/compact";
+        boolean anyCompact = subscribers.containsKey(compact);
+        if (anyCompact) {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setContentType(CompactOpCodec.MIME_TYPE);
+            headers.setLeaveMutable(true);
+            byte[] frame = CompactOpCodec.encodeBatch(fileId, edits).getBytes(StandardCharsets.UTF_8);
+            messagingTemplate.send(compact, MessageBuilder.createMessage(frame, headers.getMessageHeaders()));
+            compactFrames.increment();
+        }
+        if (!anyCompact || subscribers.containsKey(json)) {
+            messagingTemplate.convertAndSend(json, new EditBatch("OPS", fileId, edits));
+            jsonFrames.increment();
+        }
+        batchSize.record(edits.size());
+    }
+}
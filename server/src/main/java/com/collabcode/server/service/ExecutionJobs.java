@@ -0,0 +1,164 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executions as jobs: a job is queued and given an id straight away, runs
+ * on one of {@code collab.jobs.threads} threads of its own, and its status
+ * and output are then fetched by id or pushed to /topic/job/{jobId} when it
+ * ends. No request thread waits on user code.
+ *
+ * Up to {@code collab.jobs.queue-capacity} jobs wait for a thread; beyond
+ * that {@link #submit} throws {@link RejectedExecutionException}. Finished
+ * jobs are kept for {@code collab.jobs.ttl-ms}.
+ */
+@Service
+public class ExecutionJobs {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionJobs.class);
+    private static final String JOB_PREFIX = "/topic/job/";
+
+    private final CodeExecutionService executions;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long ttlMillis;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor runners;
+    private final ScheduledExecutorService expiry;
+
+    private final Counter rejected;
+    private final Timer queueWait;
+
+    public ExecutionJobs(CodeExecutionService executions,
+                         SimpMessagingTemplate messagingTemplate,
+                         MeterRegistry registry,
+                         @Value("${collab.jobs.threads:16}") int threads,
+                         @Value("${collab.jobs.queue-capacity:64}") int queueCapacity,
+                         @Value("${collab.jobs.ttl-ms:600000}") long ttlMillis) {
+        this.executions        = executions;
+        this.messagingTemplate = messagingTemplate;
+        this.ttlMillis         = ttlMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.runners = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "execution-job-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "execution-job-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        long sweepMillis = Math.max(1_000, ttlMillis / 10);
+        expiry.scheduleWithFixedDelay(this::expire, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("collab.jobs.queued", runners, r -> r.getQueue().size()).register(registry);
+        Gauge.builder("collab.jobs.running", runners, ThreadPoolExecutor::getActiveCount).register(registry);
+        this.rejected  = Counter.builder("collab.jobs.rejected").register(registry);
+        this.queueWait = Timer.builder("collab.jobs.queue.wait").publishPercentileHistogram().register(registry);
+    }
+
+    /** A job's state: QUEUED, RUNNING, SUCCEEDED or FAILED, with the output or error once it has ended. */
+    public record JobStatus(String jobId, String status, String output, String error) { }
+
+    /** A submitted job: its id, and its output once it succeeds. */
+    public record Submitted(String jobId, CompletableFuture<String> output) { }
+
+    /**
+     * Queues a run of a snapshot.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public Submitted submit(String fileId, String snapshotName) {
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        long queued = System.nanoTime();
+        try {
+            runners.execute(() -> {
+                queueWait.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+                run(job, fileId, snapshotName);
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            rejected.increment();
+            throw e;
+        }
+        return new Submitted(job.id, job.output);
+    }
+
+    public Optional<JobStatus> status(String jobId) {
+        Job job = jobs.get(jobId);
+        return job == null ? Optional.empty() : Optional.of(job.status());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runners.shutdownNow();
+        expiry.shutdownNow();
+    }
+
+    /* ---------- internals ---------- */
+
+    private static final class Job {
+        final String id;
+        final CompletableFuture<String> output = new CompletableFuture<>();
+        volatile boolean running;
+        volatile long finishedAt;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        JobStatus status() {
+            if (!output.isDone()) return new JobStatus(id, running ? "RUNNING" : "QUEUED", null, null);
+            try {
+                return new JobStatus(id, "SUCCEEDED", output.getNow(null), null);
+            } catch (RuntimeException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                return new JobStatus(id, "FAILED", null, cause.getMessage());
+            }
+        }
+    }
+
+    private void run(Job job, String fileId, String snapshotName) {
+        job.running = true;
+        try {
+            job.output.complete(executions.execute(fileId, snapshotName));
+        } catch (Exception e) {
+            logger.warn("Job {} of {} failed", job.id, fileId, e);
+            job.output.completeExceptionally(e);
+        }
+        job.finishedAt = System.currentTimeMillis();
+        messagingTemplate.convertAndSend(JOB_PREFIX + job.id, job.status());
+    }
+
+    /** Drops jobs that ended more than ttl-ms ago. */
+    void expire() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        jobs.values().removeIf(job -> job.output.isDone() && job.finishedAt != 0 && job.finishedAt <= cutoff);
+    }
+}
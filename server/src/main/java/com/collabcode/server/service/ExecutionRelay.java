@@ -0,0 +1,237 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Relays a run's output from its executor to the browser as it is written,
+ * over /topic/run/{runId}: OUTPUT frames of text, then one EXIT frame with
+ * the exit status, or one ERROR frame if the run could not be done.
+ *
+ * Output is read on {@code collab.run.relay-threads} threads, with up to
+ * {@code collab.run.queue-capacity} runs waiting. Chunks are coalesced into
+ * frames of up to {@code collab.run.frame-chars}, and none waits longer than
+ * {@code collab.run.linger-ms}.
+ *
+ * Publishing never blocks, so output is flow-controlled by the client: it
+ * grants a credit for each OUTPUT frame it has taken, and at most
+ * {@code collab.run.window-frames} frames of a run are sent ahead of its
+ * credits. Beyond that the relay stops reading, which blocks the program in
+ * its print calls; a run left without credit for
+ * {@code collab.run.credit-timeout-ms} is stopped. A session streams one run
+ * at a time, so run output waiting to be sent to it stays bounded and well
+ * below the send buffer that would close it.
+ */
+@Service
+public class ExecutionRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionRelay.class);
+    private static final String RUN_PREFIX = "/topic/run/";
+    private static final Pattern RUN_ID = Pattern.compile("[A-Za-z0-9-]{8,64}");
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final CodeExecutionService executions;
+    private final int frameChars;
+    private final long lingerMillis;
+    private final int windowFrames;
+    private final long creditTimeoutMillis;
+    private final ThreadPoolExecutor relays;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Frames> runs = new ConcurrentHashMap<>();
+    /** sessionId to the run it is streaming. */
+    private final Map<String, String> sessionRuns = new ConcurrentHashMap<>();
+
+    private final Counter rejected;
+    private final Counter stalled;
+    private final DistributionSummary frameSize;
+
+    public ExecutionRelay(SimpMessagingTemplate messagingTemplate,
+                          CodeExecutionService executions,
+                          MeterRegistry registry,
+                          @Value("${collab.run.relay-threads:16}") int relayThreads,
+                          @Value("${collab.run.queue-capacity:32}") int queueCapacity,
+                          @Value("${collab.run.frame-chars:8192}") int frameChars,
+                          @Value("${collab.run.linger-ms:20}") long lingerMillis,
+                          @Value("${collab.run.window-frames:4}") int windowFrames,
+                          @Value("${collab.run.credit-timeout-ms:30000}") long creditTimeoutMillis) {
+        this.messagingTemplate   = messagingTemplate;
+        this.executions          = executions;
+        this.frameChars          = frameChars;
+        this.lingerMillis        = lingerMillis;
+        this.windowFrames        = windowFrames;
+        this.creditTimeoutMillis = creditTimeoutMillis;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.relays = new ThreadPoolExecutor(relayThreads, relayThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "execution-relay-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "execution-relay-flush");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Gauge.builder("collab.run.active", relays, ThreadPoolExecutor::getActiveCount).register(registry);
+        this.rejected  = Counter.builder("collab.run.rejected").register(registry);
+        this.stalled   = Counter.builder("collab.run.stalled").register(registry);
+        this.frameSize = DistributionSummary.builder("collab.run.frame.chars").register(registry);
+    }
+
+    public record RunOutput(String type, String runId, String text) { }
+
+    public record RunExit(String type, String runId, int exitCode) { }
+
+    public record RunError(String type, String runId, String message) { }
+
+    /**
+     * Starts running a snapshot for a session that has subscribed to
+     * /topic/run/{runId}; runIds are client-chosen, 8 to 64 letters, digits
+     * or dashes.
+     */
+    public void start(String runId, String sessionId, String fileId, String snapshotName) {
+        if (runId == null || !RUN_ID.matcher(runId).matches()) {
+            throw new IllegalArgumentException("bad runId: " + runId);
+        }
+        if (sessionRuns.putIfAbsent(sessionId, runId) != null) {
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId,
+                    new RunError("ERROR", runId, "A run is already in progress"));
+            return;
+        }
+        Frames frames = new Frames(runId);
+        if (runs.putIfAbsent(runId, frames) != null) {
+            sessionRuns.remove(sessionId);
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId,
+                    new RunError("ERROR", runId, "A run with this id is already in progress"));
+            return;
+        }
+        try {
+            relays.execute(() -> {
+                try {
+                    relay(frames, fileId, snapshotName);
+                } finally {
+                    runs.remove(runId);
+                    sessionRuns.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            runs.remove(runId);
+            sessionRuns.remove(sessionId);
+            rejected.increment();
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId,
+                    new RunError("ERROR", runId, "Too many runs in progress, try again shortly"));
+        }
+    }
+
+    /**
+     * The client of a run has taken this many more of its OUTPUT frames;
+     * credits only count from the session that started the run.
+     */
+    public void credit(String runId, String sessionId, int frames) {
+        if (runId == null || !runId.equals(sessionRuns.get(sessionId))) return;
+        Frames run = runs.get(runId);
+        if (run != null && frames > 0) run.credit(frames);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        relays.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /* ---------- internals ---------- */
+
+    private void relay(Frames frames, String fileId, String snapshotName) {
+        String runId = frames.runId;
+        try {
+            int exitCode = executions.stream(fileId, snapshotName, frames::append);
+            frames.flush();
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId, new RunExit("EXIT", runId, exitCode));
+        } catch (Exception e) {
+            logger.warn("Run {} of {} failed", runId, fileId, e);
+            frames.flush();
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId, new RunError("ERROR", runId, "Execution failed: " + e.getMessage()));
+        }
+    }
+
+    /** A run's output not yet published. */
+    private final class Frames {
+        private final String runId;
+        private final StringBuilder pending = new StringBuilder();
+        private ScheduledFuture<?> deadline;
+        /** OUTPUT frames published and not yet credited. */
+        private int unacknowledged;
+
+        Frames(String runId) {
+            this.runId = runId;
+        }
+
+        /** Runs on the relay thread, which waits here while the window is full. */
+        synchronized void append(String chunk) {
+            awaitCredit();
+            if (pending.length() == 0) {
+                deadline = timer.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            pending.append(chunk);
+            if (pending.length() >= frameChars) flush();
+        }
+
+        /** Publishes what is pending; frames of a run go out in order as this holds the lock. */
+        synchronized void flush() {
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            if (pending.length() == 0) return;
+            messagingTemplate.convertAndSend(RUN_PREFIX + runId, new RunOutput("OUTPUT", runId, pending.toString()));
+            frameSize.record(pending.length());
+            pending.setLength(0);
+            unacknowledged++;
+        }
+
+        synchronized void credit(int frames) {
+            unacknowledged = Math.max(0, unacknowledged - frames);
+            notifyAll();
+        }
+
+        /** A linger flush may send one frame past the window; appends never do. */
+        private void awaitCredit() {
+            long creditDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(creditTimeoutMillis);
+            try {
+                while (unacknowledged >= windowFrames) {
+                    long left = creditDeadline - System.nanoTime();
+                    if (left <= 0) {
+                        stalled.increment();
+                        throw new IllegalStateException("Client stopped reading the output");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the client");
+            }
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package com.collabcode.server.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * ExecutorRouterService routes code execution requests to the proper executor based on language.
@@ -16,40 +28,72 @@ import java.util.Map;
 @Service
 public class ExecutorRouterService {
 
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     private interface ExecutorStrategy {
         String execute(String code) throws IOException, InterruptedException;
+
+        int stream(String code, Consumer<String> output) throws IOException, InterruptedException;
     }
 
     private static class HttpExecutorStrategy implements ExecutorStrategy {
         private final String executorUrl;
+        private final DownstreamClient client;
 
-        public HttpExecutorStrategy(String executorUrl) {
+        public HttpExecutorStrategy(String executorUrl, DownstreamClient client) {
             this.executorUrl = executorUrl;
+            this.client = client;
         }
 
         @Override
         public String execute(String code) throws IOException, InterruptedException {
-            HttpClient client = HttpClient.newHttpClient();
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(executorUrl))
                     .POST(HttpRequest.BodyPublishers.ofString(code))
                     .header("Content-Type", "text/plain")
                     .build();
             HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            checkStatus(response.statusCode(), response.body());
             return response.body();
         }
+
+        @Override
+        public int stream(String code, Consumer<String> output) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(executorUrl + "/stream"))
+                    .POST(HttpRequest.BodyPublishers.ofString(code))
+                    .header("Content-Type", "text/plain")
+                    .header("Accept", "text/event-stream")
+                    .build();
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 200) {
+                    checkStatus(response.statusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                return readEvents(body, output);
+            }
+        }
     }
 
     private final Map<String, ExecutorStrategy> strategyMap;
 
-    public ExecutorRouterService() {
+    /**
+     * @param readTimeoutMillis How long to wait for an executor's response; a
+     *                          buffered run answers only once the program has ended
+     */
+    public ExecutorRouterService(HttpClient httpClient,
+                                 MeterRegistry registry,
+                                 @Value("${executor.read-timeout-ms:60000}") long readTimeoutMillis) {
+        Duration readTimeout = Duration.ofMillis(readTimeoutMillis);
+        Function<String, DownstreamClient> client = language ->
+            new DownstreamClient(httpClient, registry, "executor-" + language, readTimeout);
         strategyMap = Map.of(
-            "java", new HttpExecutorStrategy("http://executor-java:8083/execute/java"),
-            "python", new HttpExecutorStrategy("http://executor-python:8084/execute/python"),
-            "c", new HttpExecutorStrategy("http://executor-c:8085/execute/c"),
-            "cpp", new HttpExecutorStrategy("http://executor-cpp:8086/execute/cpp"),
-            "js", new HttpExecutorStrategy("http://executor-js:8087/execute/js"),
-            "ruby", new HttpExecutorStrategy("http://executor-ruby:8088/execute/ruby")
+            "java", new HttpExecutorStrategy("http://executor-java:8083/execute/java", client.apply("java")),
+            "python", new HttpExecutorStrategy("http://executor-python:8084/execute/python", client.apply("python")),
+            "c", new HttpExecutorStrategy("http://executor-c:8085/execute/c", client.apply("c")),
+            "cpp", new HttpExecutorStrategy("http://executor-cpp:8086/execute/cpp", client.apply("cpp")),
+            "js", new HttpExecutorStrategy("http://executor-js:8087/execute/js", client.apply("js")),
+            "ruby", new HttpExecutorStrategy("http://executor-ruby:8088/execute/ruby", client.apply("ruby"))
         );
     }
 
@@ -68,4 +112,59 @@ public class ExecutorRouterService {
         }
         return strategy.execute(code);
     }
+
+    /**
+     * Runs the given code on the executor for its language, passing output to
+     * the consumer as the program writes it. The executor sends it as
+     * server-sent events and is only read as fast as the consumer takes it.
+     * @return The program's exit status
+     */
+    public int streamToExecutor(String language, String code, Consumer<String> output) throws IOException, InterruptedException {
+        ExecutorStrategy strategy = strategyMap.get(language);
+        if (strategy == null) {
+            throw new RuntimeException("Unsupported language: " + language);
+        }
+        return strategy.stream(code, output);
+    }
+
+    /**
+     * Turns an executor's error answer into an exception, so it never passes
+     * for program output.
+     *
+     * @throws RejectedExecutionException on 429, when the executor's queue is full
+     * @throws IOException on any other status that is not 2xx
+     */
+    static void checkStatus(int status, String message) throws IOException {
+        if (status == 429) throw new RejectedExecutionException("Executor is busy: " + message);
+        if (status < 200 || status >= 300) throw new IOException("Executor returned " + status + ": " + message);
+    }
+
+    /**
+     * Reads an executor's event stream: "output" events of {text} until one
+     * "exit" event of {exitCode}, which is returned.
+     */
+    static int readEvents(InputStream body, Consumer<String> output) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String event = "message";
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) {
+                // a blank line ends an event
+                if (data.length() > 0) {
+                    JsonNode payload = JSON.readTree(data.toString());
+                    if ("output".equals(event)) output.accept(payload.path("text").asText());
+                    else if ("exit".equals(event)) return payload.path("exitCode").asInt();
+                }
+                event = "message";
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) data.append('\n');
+                data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            }
+        }
+        throw new IOException("Executor closed the stream before the run ended");
+    }
 }
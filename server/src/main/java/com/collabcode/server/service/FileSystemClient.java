@@ -1,12 +1,20 @@
 package com.collabcode.server.service;
 
+import com.collabcode.server.controller.CodeController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.InflaterInputStream;
 
 @Service
 public class FileSystemClient {
@@ -14,19 +22,148 @@ public class FileSystemClient {
     @Value("${filesystem.service.url}")
     private String fsBaseUrl;
 
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private DownstreamClient http;
+
     /* ---------- public helpers ---------- */
 
     public String getFileContent(String relativePath) throws Exception {
         HttpRequest req = HttpRequest.newBuilder()
                 .uri(URI.create(fsBaseUrl + "/read?filename=" + relativePath))
                 .GET().build();
-        HttpResponse<String> resp = HttpClient.newHttpClient()
-                .send(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
         if (resp.statusCode() != 200)
             throw new RuntimeException("FS read failed: " + resp.body());
         return resp.body();
     }
 
+    /**
+     * Latest snapshot of many files of one project in a single round-trip.
+     * The NDJSON response is parsed line by line as it arrives.
+     *
+     * @return Latest snapshot keyed by fileDir. FileDirs without a snapshot, or
+     *         that failed to read on the filesystem side, are absent.
+     */
+    public Map<String, CodeController.LatestResponse> getLatestBatch(Long projectId,
+                                                                     List<String> fileDirs) throws Exception {
+        return getLatestBatch(projectId, fileDirs, true);
+    }
+
+    /**
+     * Like {@link #getLatestBatch(Long, List)}, but with includeContent=false only
+     * snapshot names and content hashes are transferred.
+     */
+    public Map<String, CodeController.LatestResponse> getLatestBatch(Long projectId,
+                                                                     List<String> fileDirs,
+                                                                     boolean includeContent) throws Exception {
+        byte[] body = mapper.writeValueAsBytes(new LatestBatchRequest(projectId, fileDirs, includeContent));
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(fsBaseUrl + "/latest/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        HttpResponse<Stream<String>> resp = http.send(req, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = resp.body()) {
+            if (resp.statusCode() != 200)
+                throw new RuntimeException("FS batch read failed: " + resp.statusCode());
+
+            Map<String, CodeController.LatestResponse> latest = new HashMap<>();
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.isBlank()) continue;
+                LatestBatchEntry entry = mapper.readValue(line, LatestBatchEntry.class);
+                if (entry.snapshotName() != null && entry.error() == null) {
+                    latest.put(entry.fileDir(), new CodeController.LatestResponse(
+                        entry.snapshotName(), entry.content(), entry.contentHash()));
+                }
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * Name and content hash of the newest snapshot of a file, without its content.
+     *
+     * @return The latest snapshot with a null content, or null if the file has no snapshot yet.
+     */
+    public CodeController.LatestResponse getLatestHash(Long projectId, String fileDir) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(fsBaseUrl + "/latest/hash?projectId=" + projectId + "&fileDir=" + fileDir))
+                .GET().build();
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() == 404) return null;
+        if (resp.statusCode() != 200)
+            throw new RuntimeException("FS hash read failed: " + resp.statusCode());
+        return mapper.readValue(resp.body(), CodeController.LatestResponse.class);
+    }
+
+    /**
+     * Opens the newest snapshot of a file as a byte stream, without buffering it.
+     * Snapshots stored compressed are transferred compressed and inflated here.
+     * The caller must close the stream.
+     *
+     * @return The snapshot bytes, or null if the file has no snapshot yet.
+     */
+    public InputStream openLatest(Long projectId, String fileDir) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(fsBaseUrl + "/latest/raw?projectId=" + projectId + "&fileDir=" + fileDir))
+                .header("Accept-Encoding", "deflate")
+                .GET().build();
+        HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
+        if (resp.statusCode() == 200) {
+            boolean deflated = resp.headers().firstValue("Content-Encoding")
+                                   .map("deflate"::equalsIgnoreCase).orElse(false);
+            return deflated ? new InflaterInputStream(resp.body()) : resp.body();
+        }
+        resp.body().close();
+        if (resp.statusCode() == 404) return null;
+        throw new RuntimeException("FS raw read failed: " + resp.statusCode());
+    }
+
+    /**
+     * Writes a new snapshot of a file.
+     *
+     * @param relativePath projectId/fileDir/snapshotName of the new snapshot.
+     */
+    public void saveSnapshot(String fileId, String relativePath, String content,
+                             String author, String summary) throws Exception {
+        byte[] body = mapper.writeValueAsBytes(new SaveRequest(fileId, relativePath, content, author, summary));
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(fsBaseUrl + "/save"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() != 200)
+            throw new RuntimeException("FS save failed: " + resp.statusCode());
+        FsMessage msg = mapper.readValue(resp.body(), FsMessage.class);
+        if (msg.message() == null || msg.message().startsWith("ERROR"))
+            throw new RuntimeException("FS save failed: " + msg.message());
+    }
+
+    /**
+     * Writes a new snapshot of a file with the content of an existing one, by
+     * reference, so the body never travels through the server.
+     *
+     * @param relativePath projectId/fileDir/snapshotName of the new snapshot.
+     * @param source       projectId/fileDir/snapshotName of the snapshot to copy.
+     */
+    public void linkSnapshot(String fileId, String relativePath, String source,
+                             String author, String summary) throws Exception {
+        byte[] body = mapper.writeValueAsBytes(new LinkRequest(fileId, relativePath, source, author, summary));
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(fsBaseUrl + "/link"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() != 200)
+            throw new RuntimeException("FS link failed: " + resp.statusCode());
+        FsMessage msg = mapper.readValue(resp.body(), FsMessage.class);
+        if (msg.message() == null || msg.message().startsWith("ERROR"))
+            throw new RuntimeException("FS link failed: " + msg.message());
+    }
+
     public void createProjectFolder(Long projectId) {
         postNoBody("/project/" + projectId);
     }
@@ -35,12 +172,30 @@ public class FileSystemClient {
         deleteNoBody("/project/" + projectId);
     }
 
+    /** Deletes a file's snapshots, freeing the blobs no other snapshot shares. */
+    public void deleteFileDir(Long projectId, String fileDir) {
+        deleteNoBody("/file?projectId=" + projectId + "&fileDir=" + fileDir);
+    }
+
     public void createFolder(Long projectId, String folderPath) {
         postNoBody("/create-folder?projectId=" + projectId + "&folderName=" + folderPath);
     }
 
     /* ---------- internals ---------- */
 
+    private record LatestBatchRequest(Long projectId, List<String> fileDirs, boolean includeContent) { }
+
+    private record SaveRequest(String fileId, String filename, String content,
+                               String author, String summary) { }
+
+    private record LinkRequest(String fileId, String filename, String source,
+                               String author, String summary) { }
+
+    private record FsMessage(String message) { }
+
+    private record LatestBatchEntry(String fileDir, String snapshotName, String content,
+                                    String contentHash, String error) { }
+
     private void postNoBody(String path) { send(HttpRequest.newBuilder()
             .uri(URI.create(fsBaseUrl + path)).POST(HttpRequest.BodyPublishers.noBody()).build()); }
 
@@ -49,8 +204,7 @@ public class FileSystemClient {
 
     private void send(HttpRequest req) {
         try {
-            HttpResponse<String> resp = HttpClient.newHttpClient()
-                    .send(req, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
             if (resp.statusCode() != 200)
                 throw new RuntimeException("FS call failed: " + resp.body());
         } catch (Exception e) {
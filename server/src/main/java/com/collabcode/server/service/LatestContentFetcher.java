@@ -0,0 +1,194 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.CodeController;
+import com.collabcode.server.entity.FileMetadata;
+import com.collabcode.server.entity.Folder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the latest snapshot content of many files from the filesystem service.
+ * Files are sent to {@code /latest/batch} in chunks of {@code filesystem.fetch.batch-size},
+ * and at most {@code filesystem.fetch.parallelism} chunks are in flight at once,
+ * shared across all callers.
+ *
+ * Fetches of many files serve forks, merges and downloads, which may run on
+ * any server node, while only the node a file is routed to keeps its entry in
+ * {@link LatestSnapshotCache} current. They therefore always read the
+ * filesystem, and neither read nor fill the cache.
+ */
+@Service
+public class LatestContentFetcher {
+
+    @Value("${filesystem.service.url}")
+    private String fsUrl;
+
+    @Value("${filesystem.fetch.batch-size:100}")
+    private int batchSize;
+
+    private final RestTemplate rest;
+    private final FileSystemClient fsClient;
+    private final LatestSnapshotCache cache;
+    private final ExecutorService pool;
+
+    public LatestContentFetcher(RestTemplate rest,
+                                FileSystemClient fsClient,
+                                LatestSnapshotCache cache,
+                                @Value("${filesystem.fetch.parallelism:8}") int parallelism) {
+        this.rest     = rest;
+        this.fsClient = fsClient;
+        this.cache    = cache;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "fs-fetch-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Fetches the latest content of every file.
+     *
+     * @param files   The files to fetch.
+     * @param folders The files' folders keyed by id, used to resolve each project id.
+     * @return Content keyed by file id, in the same order as {@code files}. A file whose
+     *         fetch failed, or that has no snapshot yet, is left out without affecting the others.
+     */
+    public Map<String, String> fetchLatest(List<FileMetadata> files, Map<Long, Folder> folders) {
+        Map<String, String> contents = new LinkedHashMap<>();
+        fetch(files, folders, true).forEach((fileId, latest) -> contents.put(fileId, latest.getContent()));
+        return contents;
+    }
+
+    /**
+     * Fetches the latest content of one file, failing rather than leaving it
+     * out if the fetch fails. Only for the node the file is routed to, as it
+     * reads the cache.
+     *
+     * @return The content, or an empty string if the file has no snapshot yet.
+     */
+    public String fetchLatest(FileMetadata file, Folder folder) throws Exception {
+        CodeController.LatestResponse cached = cache.get(folder.getProjectId(), fileDir(file));
+        if (cached != null && cached.getContent() != null) return cached.getContent();
+        try (InputStream in = fsClient.openLatest(folder.getProjectId(), fileDir(file))) {
+            return in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Fetches the name and content hash of every file's latest snapshot, without
+     * its content. Used to link copies of files to their existing snapshots.
+     *
+     * @return Latest snapshots keyed by file id, in the same order as {@code files},
+     *         with a null content. Files without a snapshot are left out.
+     */
+    public Map<String, CodeController.LatestResponse> fetchLatestRefs(List<FileMetadata> files,
+                                                                      Map<Long, Folder> folders) {
+        return fetch(files, folders, false);
+    }
+
+    private Map<String, CodeController.LatestResponse> fetch(List<FileMetadata> files,
+                                                             Map<Long, Folder> folders,
+                                                             boolean withContent) {
+        Map<String, CodeController.LatestResponse> fetched = new HashMap<>();
+        Map<Long, List<FileMetadata>> byProject = new LinkedHashMap<>();
+        for (FileMetadata file : files) {
+            Long projectId = folders.get(file.getFolderId()).getProjectId();
+            byProject.computeIfAbsent(projectId, k -> new ArrayList<>()).add(file);
+        }
+
+        List<Future<Map<String, CodeController.LatestResponse>>> pending = new ArrayList<>();
+        byProject.forEach((projectId, projectFiles) -> {
+            for (int from = 0; from < projectFiles.size(); from += batchSize) {
+                List<FileMetadata> batch =
+                    projectFiles.subList(from, Math.min(from + batchSize, projectFiles.size()));
+                pending.add(pool.submit(() -> fetchBatch(projectId, batch, withContent)));
+            }
+        });
+
+        for (Future<Map<String, CodeController.LatestResponse>> batch : pending) {
+            try {
+                fetched.putAll(batch.get());
+            } catch (ExecutionException ignored) {
+            } catch (InterruptedException e) {
+                pending.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while fetching latest contents");
+            }
+        }
+
+        Map<String, CodeController.LatestResponse> ordered = new LinkedHashMap<>();
+        for (FileMetadata file : files) {
+            CodeController.LatestResponse latest = fetched.get(file.getId());
+            if (latest != null) {
+                ordered.put(file.getId(), latest);
+            }
+        }
+        return ordered;
+    }
+
+    private Map<String, CodeController.LatestResponse> fetchBatch(Long projectId,
+                                                                  List<FileMetadata> batch,
+                                                                  boolean withContent) {
+        Map<String, CodeController.LatestResponse> fetched = new HashMap<>();
+        try {
+            List<String> fileDirs = batch.stream().map(LatestContentFetcher::fileDir).toList();
+            Map<String, CodeController.LatestResponse> latest =
+                fsClient.getLatestBatch(projectId, fileDirs, withContent);
+            for (FileMetadata file : batch) {
+                accept(file, latest.get(fileDir(file)), withContent, fetched);
+            }
+        } catch (Exception batchFailed) {
+            // fall back to one request per file so a single bad file cannot sink the batch
+            for (FileMetadata file : batch) {
+                try {
+                    CodeController.LatestResponse rsp = withContent
+                        ? fetchOne(projectId, fileDir(file))
+                        : fsClient.getLatestHash(projectId, fileDir(file));
+                    accept(file, rsp, withContent, fetched);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        return fetched;
+    }
+
+    private static void accept(FileMetadata file, CodeController.LatestResponse rsp,
+                               boolean withContent, Map<String, CodeController.LatestResponse> fetched) {
+        if (rsp == null || rsp.getSnapshotName() == null) return;
+        if (withContent && rsp.getContent() == null) return;
+        fetched.put(file.getId(), rsp);
+    }
+
+    private static String fileDir(FileMetadata file) {
+        return file.getId() + "-" + file.getFilename().replace('.', '-');
+    }
+
+    private CodeController.LatestResponse fetchOne(Long projectId, String fileDir) {
+        String url = fsUrl + "/latest?projectId=" + projectId + "&fileDir=" + fileDir;
+        ResponseEntity<CodeController.LatestResponse> rsp =
+            rest.getForEntity(url, CodeController.LatestResponse.class);
+        return rsp.getStatusCode().is2xxSuccessful() ? rsp.getBody() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,129 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.CodeController;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of the latest snapshot of each file, keyed by (projectId, fileDir)
+ * and bounded by the approximate heap size of the cached content rather than
+ * by entry count. Saves write through it and deletes invalidate it, so most
+ * reads of /latest never leave the server.
+ *
+ * Only the node a file's requests are routed to (by fileId, see nginx.conf)
+ * saves it, so only that node's entry is kept current. Reads that can land on
+ * any node, such as forks and downloads, must go to the filesystem instead.
+ */
+@Service
+public class LatestSnapshotCache {
+
+    /** Rough per-entry overhead of the map node, key and response object. */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, CodeController.LatestResponse> entries =
+        new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public LatestSnapshotCache(@Value("${cache.latest.max-bytes:67108864}") long maxBytes,
+                               MeterRegistry registry) {
+        this.maxBytes  = maxBytes;
+        this.hits      = Counter.builder("cache.latest.requests").tag("result", "hit").register(registry);
+        this.misses    = Counter.builder("cache.latest.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.latest.evictions").register(registry);
+        Gauge.builder("cache.latest.bytes", this, LatestSnapshotCache::usedBytes).register(registry);
+        Gauge.builder("cache.latest.entries", this, LatestSnapshotCache::size).register(registry);
+    }
+
+    /**
+     * @return A copy of the cached latest snapshot, or null on a miss.
+     */
+    public synchronized CodeController.LatestResponse get(Long projectId, String fileDir) {
+        CodeController.LatestResponse cached = entries.get(new Key(projectId, fileDir));
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new CodeController.LatestResponse(
+            cached.getSnapshotName(), cached.getContent(), cached.getContentHash());
+    }
+
+    /**
+     * Caches a file's latest snapshot. An entry that is already newer is kept,
+     * so two racing saves cannot leave the older one cached. Snapshot names of
+     * one fileDir differ only in their timestamp, so they sort by age.
+     */
+    public synchronized void put(Long projectId, String fileDir, CodeController.LatestResponse latest) {
+        if (latest == null || latest.getSnapshotName() == null || latest.getContent() == null) return;
+
+        long weight = weigh(latest);
+        Key key = new Key(projectId, fileDir);
+        CodeController.LatestResponse current = entries.get(key);
+        if (current != null && current.getSnapshotName().compareTo(latest.getSnapshotName()) > 0) return;
+
+        if (current != null) {
+            entries.remove(key);
+            usedBytes -= weigh(current);
+        }
+        // one oversized file would otherwise flush the whole cache
+        if (weight > maxBytes / 16) return;
+
+        entries.put(key, new CodeController.LatestResponse(
+            latest.getSnapshotName(), latest.getContent(), latest.getContentHash()));
+        usedBytes += weight;
+        evictToFit();
+    }
+
+    public synchronized void invalidate(Long projectId, String fileDir) {
+        CodeController.LatestResponse removed = entries.remove(new Key(projectId, fileDir));
+        if (removed != null) usedBytes -= weigh(removed);
+    }
+
+    public synchronized void invalidateProject(Long projectId) {
+        Iterator<Map.Entry<Key, CodeController.LatestResponse>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, CodeController.LatestResponse> e = it.next();
+            if (e.getKey().projectId().equals(projectId)) {
+                usedBytes -= weigh(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /* ---------- internals ---------- */
+
+    private void evictToFit() {
+        Iterator<Map.Entry<Key, CodeController.LatestResponse>> it = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= weigh(it.next().getValue());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private static long weigh(CodeController.LatestResponse latest) {
+        return ENTRY_OVERHEAD + 2L * (latest.getSnapshotName().length() + latest.getContent().length());
+    }
+
+    private record Key(Long projectId, String fileDir) { }
+}
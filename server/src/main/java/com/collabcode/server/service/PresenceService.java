@@ -0,0 +1,241 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is editing which file, per STOMP session. A session joins a file with
+ * SUBSCRIBE and leaves it with LEAVE or by disconnecting. Every message of a
+ * session, HEARTBEATs included, keeps it alive for {@code presence.ttl-ms};
+ * sessions that go quiet without a disconnect are expired by a timer wheel.
+ *
+ * Joins and leaves of a user are broadcast on /topic/edit/{fileId} as
+ * PRESENCE diffs. When the last editor of a file is gone its live document is
+ * saved and closed. Only live sessions and the files they have open are
+ * kept in memory.
+ */
+@Service
+public class PresenceService {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final CollaborationService collaboration;
+    private final AutosaveService autosave;
+    private final Clock clock;
+    private final long ttlMillis;
+    private final long tickMillis;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    /** fileId to the sessions each of its users has on it. */
+    private final Map<String, Map<String, Integer>> files = new ConcurrentHashMap<>();
+    private final TimerWheel<String> wheel;
+    private final ScheduledExecutorService ticker;
+
+    private final Counter expired;
+
+    @Autowired
+    public PresenceService(SimpMessagingTemplate messagingTemplate,
+                           CollaborationService collaboration,
+                           AutosaveService autosave,
+                           MeterRegistry registry,
+                           @Value("${presence.ttl-ms:45000}") long ttlMillis,
+                           @Value("${presence.tick-ms:1000}") long tickMillis,
+                           @Value("${presence.wheel-slots:64}") int wheelSlots) {
+        this(messagingTemplate, collaboration, autosave, registry, Clock.systemDefaultZone(),
+             ttlMillis, tickMillis, wheelSlots);
+    }
+
+    PresenceService(SimpMessagingTemplate messagingTemplate,
+                    CollaborationService collaboration,
+                    AutosaveService autosave,
+                    MeterRegistry registry,
+                    Clock clock,
+                    long ttlMillis,
+                    long tickMillis,
+                    int wheelSlots) {
+        this.messagingTemplate = messagingTemplate;
+        this.collaboration     = collaboration;
+        this.autosave          = autosave;
+        this.clock             = clock;
+        this.ttlMillis         = ttlMillis;
+        this.tickMillis        = tickMillis;
+        this.wheel  = new TimerWheel<>(wheelSlots, tickMillis, clock.millis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-tick");
+            t.setDaemon(true);
+            return t;
+        });
+        this.expired = Counter.builder("presence.expired").register(registry);
+        Gauge.builder("presence.sessions", sessions, Map::size).register(registry);
+        Gauge.builder("presence.files", files, Map::size).register(registry);
+    }
+
+    /** A change in who edits a file; users are listed once however many sessions they have. */
+    public record PresenceDiff(String type, String fileId, List<String> joined, List<String> left, int count) { }
+
+    /** Users editing a file. */
+    public record FilePresence(String fileId, int count, Set<String> users) { }
+
+    @PostConstruct
+    public void start() {
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) session(sessionId);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        drop(event.getSessionId());
+    }
+
+    /**
+     * A session's user opened a file. Also called for each of its OPs, so a
+     * session that expired while still connected is back on the file before
+     * its edits reopen the document, which is then closed when it goes.
+     *
+     * @return false if the session has no user and cannot edit the file
+     */
+    public boolean join(String sessionId, String userId, String fileId) {
+        if (userId == null) return false;
+        Session session = session(sessionId);
+        if (session.files.putIfAbsent(fileId, userId) != null) return true;
+
+        files.compute(fileId, (id, users) -> {
+            if (users == null) users = new ConcurrentHashMap<>();
+            if (users.merge(userId, 1, Integer::sum) == 1) {
+                broadcast(new PresenceDiff("PRESENCE", id, List.of(userId), List.of(), users.size()));
+            }
+            return users;
+        });
+        return true;
+    }
+
+    /** Whether a session has joined a file and not left it or expired since. */
+    public boolean editing(String sessionId, String fileId) {
+        Session session = sessions.get(sessionId);
+        return session != null && session.files.containsKey(fileId);
+    }
+
+    /** A session closed a file. */
+    public void leave(String sessionId, String fileId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) return;
+        String userId = session.files.remove(fileId);
+        if (userId != null) removeEditor(fileId, userId);
+    }
+
+    /** Keeps a session alive for another TTL. */
+    public void touch(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) session.deadline = clock.millis() + ttlMillis;
+    }
+
+    public FilePresence presence(String fileId) {
+        Map<String, Integer> users = files.getOrDefault(fileId, Map.of());
+        Set<String> ids = new TreeSet<>(users.keySet());
+        return new FilePresence(fileId, ids.size(), ids);
+    }
+
+    /** @return Number of users editing each file, in the order given. */
+    public Map<String, Integer> counts(Collection<String> fileIds) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String fileId : fileIds) counts.put(fileId, files.getOrDefault(fileId, Map.of()).size());
+        return counts;
+    }
+
+    /** Expires the sessions whose deadline has passed. */
+    void tick() {
+        long now = clock.millis();
+        for (String sessionId : wheel.advance(now)) {
+            Session session = sessions.get(sessionId);
+            if (session == null) continue;
+            if (session.deadline > now) {
+                wheel.schedule(sessionId, session.deadline);
+            } else {
+                expired.increment();
+                drop(sessionId);
+            }
+        }
+    }
+
+    /* ---------- internals ---------- */
+
+    private static final class Session {
+        /** fileId to the user the session edits it as. */
+        final Map<String, String> files = new ConcurrentHashMap<>();
+        volatile long deadline;
+    }
+
+    private Session session(String sessionId) {
+        Session session = sessions.computeIfAbsent(sessionId, id -> {
+            Session created = new Session();
+            created.deadline = clock.millis() + ttlMillis;
+            wheel.schedule(id, created.deadline);
+            return created;
+        });
+        session.deadline = clock.millis() + ttlMillis;
+        return session;
+    }
+
+    private void drop(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) return;
+        session.files.forEach(this::removeEditor);
+        session.files.clear();
+    }
+
+    private void removeEditor(String fileId, String userId) {
+        Map<String, Integer> left = files.computeIfPresent(fileId, (id, users) -> {
+            users.computeIfPresent(userId, (u, n) -> n > 1 ? n - 1 : null);
+            if (!users.containsKey(userId)) {
+                broadcast(new PresenceDiff("PRESENCE", id, List.of(), List.of(userId), users.size()));
+            }
+            return users.isEmpty() ? null : users;
+        });
+        if (left != null) return;
+
+        // the save blocks, so it runs outside the file's entry; the document is
+        // only dropped if no one joined meanwhile, else it stays open for them
+        autosave.close(fileId);
+        files.compute(fileId, (id, users) -> {
+            if (users == null) collaboration.close(id);
+            return users;
+        });
+    }
+
+    /** Sent while holding the file's entry, so a file's diffs go out in order. */
+    private void broadcast(PresenceDiff diff) {
+        messagingTemplate.convertAndSend("/topic/edit/" + diff.fileId(), diff);
+    }
+}
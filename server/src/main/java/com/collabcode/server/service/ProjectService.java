@@ -23,6 +23,9 @@ public class ProjectService {
     @Autowired
     private ProjectUserRoleRepository projectUserRoleRepository;
 
+    @Autowired
+    private LatestSnapshotCache latestCache;
+
     /**
      * Original create method remains (if needed for other flows).
      */
@@ -71,6 +74,7 @@ public class ProjectService {
     public void delete(Long id) {
         getById(id);  
         fileSystemClient.deleteProjectFolder(id);
+        latestCache.invalidateProject(id);
         projectRepository.deleteById(id);
     }
 
@@ -0,0 +1,178 @@
+package com.collabcode.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable text buffer stored as a balanced tree of short string chunks, so
+ * an insert or delete anywhere costs O(log n) instead of copying the whole
+ * document. Every edit returns a new rope sharing unchanged chunks with the
+ * old one.
+ */
+public final class Rope {
+
+    /** Chunks are merged up to this size and split beyond it. */
+    static final int MAX_LEAF = 512;
+
+    private static final Rope EMPTY = new Rope(new Leaf(""));
+
+    private final Node root;
+
+    private Rope(Node root) {
+        this.root = root;
+    }
+
+    public static Rope of(String text) {
+        if (text.isEmpty()) return EMPTY;
+        List<Node> leaves = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += MAX_LEAF) {
+            leaves.add(new Leaf(text.substring(i, Math.min(text.length(), i + MAX_LEAF))));
+        }
+        return new Rope(build(leaves, 0, leaves.size()));
+    }
+
+    public int length() {
+        return root.length();
+    }
+
+    public Rope insert(int index, String text) {
+        checkIndex(index);
+        if (text.isEmpty()) return this;
+        Node[] parts = split(root, index);
+        return new Rope(balanced(concat(concat(parts[0], leafFor(text)), parts[1])));
+    }
+
+    public Rope delete(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        if (from > to) throw new IndexOutOfBoundsException("from " + from + " > to " + to);
+        if (from == to) return this;
+        Node[] head = split(root, from);
+        Node[] tail = split(head[1], to - from);
+        return new Rope(balanced(concat(head[0], tail[1])));
+    }
+
+    public String substring(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        StringBuilder sb = new StringBuilder(to - from);
+        appendRange(root, from, to, sb);
+        return sb.toString();
+    }
+
+    /** Depth of the tree; stays logarithmic in the number of chunks. */
+    int depth() {
+        return root.depth();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length());
+        appendRange(root, 0, length(), sb);
+        return sb.toString();
+    }
+
+    /* ---------- internals ---------- */
+
+    private sealed interface Node permits Leaf, Concat {
+        int length();
+        int depth();
+    }
+
+    private record Leaf(String text) implements Node {
+        public int length() { return text.length(); }
+        public int depth()  { return 0; }
+    }
+
+    private record Concat(Node left, Node right, int length, int depth) implements Node {
+        Concat(Node left, Node right) {
+            this(left, right, left.length() + right.length(), 1 + Math.max(left.depth(), right.depth()));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index > length()) {
+            throw new IndexOutOfBoundsException("index " + index + " outside 0.." + length());
+        }
+    }
+
+    private static Node leafFor(String text) {
+        return text.length() <= MAX_LEAF ? new Leaf(text) : of(text).root;
+    }
+
+    /** Splits a node into the text before and from index. */
+    private static Node[] split(Node node, int index) {
+        if (index == 0) return new Node[] { EMPTY.root, node };
+        if (index == node.length()) return new Node[] { node, EMPTY.root };
+        if (node instanceof Leaf leaf) {
+            return new Node[] { new Leaf(leaf.text.substring(0, index)), new Leaf(leaf.text.substring(index)) };
+        }
+        Concat c = (Concat) node;
+        if (index < c.left.length()) {
+            Node[] parts = split(c.left, index);
+            return new Node[] { parts[0], concat(parts[1], c.right) };
+        }
+        Node[] parts = split(c.right, index - c.left.length());
+        return new Node[] { concat(c.left, parts[0]), parts[1] };
+    }
+
+    private static Node concat(Node left, Node right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        if (left instanceof Leaf l && right instanceof Leaf r && l.length() + r.length() <= MAX_LEAF) {
+            return new Leaf(l.text + r.text);
+        }
+        // keep small edits from piling up as tiny leaves at a tree edge
+        if (left instanceof Concat l && l.right instanceof Leaf lr && right instanceof Leaf r
+            && lr.length() + r.length() <= MAX_LEAF) {
+            return new Concat(l.left, new Leaf(lr.text + r.text));
+        }
+        if (right instanceof Concat r && r.left instanceof Leaf rl && left instanceof Leaf l
+            && l.length() + rl.length() <= MAX_LEAF) {
+            return new Concat(new Leaf(l.text + rl.text), r.right);
+        }
+        return new Concat(left, right);
+    }
+
+    /**
+     * Rebuilds a tree that has become much deeper than a balanced one would
+     * be. Splits and concats only touch one path, so this is rare.
+     */
+    private static Node balanced(Node node) {
+        int chunks = Math.max(1, node.length() / (MAX_LEAF / 2));
+        int balancedDepth = 32 - Integer.numberOfLeadingZeros(chunks);
+        if (node.depth() <= 2 * balancedDepth + 4) return node;
+
+        List<Node> leaves = new ArrayList<>();
+        collectLeaves(node, leaves);
+        return build(leaves, 0, leaves.size());
+    }
+
+    private static void collectLeaves(Node node, List<Node> leaves) {
+        if (node instanceof Concat c) {
+            collectLeaves(c.left, leaves);
+            collectLeaves(c.right, leaves);
+        } else if (node.length() > 0) {
+            leaves.add(node);
+        }
+    }
+
+    private static Node build(List<Node> leaves, int from, int to) {
+        if (to - from == 0) return EMPTY.root;
+        if (to - from == 1) return leaves.get(from);
+        int mid = (from + to) >>> 1;
+        return new Concat(build(leaves, from, mid), build(leaves, mid, to));
+    }
+
+    private static void appendRange(Node node, int from, int to, StringBuilder sb) {
+        if (from >= to) return;
+        if (node instanceof Leaf leaf) {
+            sb.append(leaf.text, from, to);
+            return;
+        }
+        Concat c = (Concat) node;
+        int leftLength = c.left.length();
+        if (from < leftLength) appendRange(c.left, from, Math.min(to, leftLength), sb);
+        if (to > leftLength) appendRange(c.right, Math.max(0, from - leftLength), to - leftLength, sb);
+    }
+}
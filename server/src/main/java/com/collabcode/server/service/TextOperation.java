@@ -0,0 +1,311 @@
+package com.collabcode.server.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An edit of a whole text document, in the component format used by ot.js:
+ * a positive integer retains that many characters, a negative integer deletes
+ * that many, and a string inserts itself. Lengths count UTF-16 code units, the
+ * same as JavaScript string indices on the client.
+ *
+ * Operations are kept canonical (adjacent components merged, an insert always
+ * before a delete at the same position), so equal edits compare equal.
+ */
+public final class TextOperation {
+
+    private final List<Object> components = new ArrayList<>();
+    private int baseLength;
+    private int targetLength;
+
+    public TextOperation retain(int n) {
+        if (n < 0) throw new IllegalArgumentException("retain count must be positive");
+        if (n == 0) return this;
+        baseLength   += n;
+        targetLength += n;
+        int last = components.size() - 1;
+        if (last >= 0 && isRetain(components.get(last))) {
+            components.set(last, (Integer) components.get(last) + n);
+        } else {
+            components.add(n);
+        }
+        return this;
+    }
+
+    public TextOperation insert(String text) {
+        if (text.isEmpty()) return this;
+        targetLength += text.length();
+        int last = components.size() - 1;
+        if (last >= 0 && isInsert(components.get(last))) {
+            components.set(last, components.get(last) + text);
+        } else if (last >= 0 && isDelete(components.get(last))) {
+            // keep inserts before deletes so the same edit has one representation
+            if (last > 0 && isInsert(components.get(last - 1))) {
+                components.set(last - 1, components.get(last - 1) + text);
+            } else {
+                components.add(last, text);
+            }
+        } else {
+            components.add(text);
+        }
+        return this;
+    }
+
+    public TextOperation delete(int n) {
+        if (n < 0) throw new IllegalArgumentException("delete count must be positive");
+        if (n == 0) return this;
+        baseLength += n;
+        int last = components.size() - 1;
+        if (last >= 0 && isDelete(components.get(last))) {
+            components.set(last, (Integer) components.get(last) - n);
+        } else {
+            components.add(-n);
+        }
+        return this;
+    }
+
+    /** Length of the document this operation applies to. */
+    public int getBaseLength() {
+        return baseLength;
+    }
+
+    /** Length of the document after applying this operation. */
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    public boolean isNoop() {
+        return components.isEmpty() || (components.size() == 1 && isRetain(components.get(0)));
+    }
+
+    public String apply(String document) {
+        if (document.length() != baseLength) {
+            throw new IllegalArgumentException(
+                "operation expects a document of length " + baseLength + ", got " + document.length());
+        }
+        StringBuilder out = new StringBuilder(targetLength);
+        int pos = 0;
+        for (Object c : components) {
+            if (isRetain(c)) {
+                out.append(document, pos, pos + (Integer) c);
+                pos += (Integer) c;
+            } else if (isInsert(c)) {
+                out.append((String) c);
+            } else {
+                pos -= (Integer) c;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Applies the operation to a rope, one O(log n) edit per insert or delete
+     * component instead of rebuilding the whole text.
+     */
+    public Rope apply(Rope document) {
+        if (document.length() != baseLength) {
+            throw new IllegalArgumentException(
+                "operation expects a document of length " + baseLength + ", got " + document.length());
+        }
+        int pos = 0;
+        for (Object c : components) {
+            if (isRetain(c)) {
+                pos += (Integer) c;
+            } else if (isInsert(c)) {
+                document = document.insert(pos, (String) c);
+                pos += ((String) c).length();
+            } else {
+                document = document.delete(pos, pos - (Integer) c);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Transforms two concurrent operations on the same document so that
+     * applying a then b' gives the same result as applying b then a'.
+     * On an insert at the same position, a's text goes first.
+     *
+     * @return {a', b'}
+     */
+    public static TextOperation[] transform(TextOperation a, TextOperation b) {
+        if (a.baseLength != b.baseLength) {
+            throw new IllegalArgumentException("concurrent operations must share a base length");
+        }
+        TextOperation aPrime = new TextOperation();
+        TextOperation bPrime = new TextOperation();
+        Cursor ca = new Cursor(a.components);
+        Cursor cb = new Cursor(b.components);
+
+        while (ca.hasNext() || cb.hasNext()) {
+            if (ca.hasNext() && isInsert(ca.peek())) {
+                String text = (String) ca.take();
+                aPrime.insert(text);
+                bPrime.retain(text.length());
+                continue;
+            }
+            if (cb.hasNext() && isInsert(cb.peek())) {
+                String text = (String) cb.take();
+                aPrime.retain(text.length());
+                bPrime.insert(text);
+                continue;
+            }
+            if (!ca.hasNext() || !cb.hasNext()) {
+                throw new IllegalArgumentException("operations do not cover the same document");
+            }
+
+            int n = Math.min(ca.remaining(), cb.remaining());
+            boolean aRetains = isRetain(ca.peek());
+            boolean bRetains = isRetain(cb.peek());
+            if (aRetains && bRetains) {
+                aPrime.retain(n);
+                bPrime.retain(n);
+            } else if (!aRetains && bRetains) {
+                aPrime.delete(n);
+            } else if (aRetains) {
+                bPrime.delete(n);
+            }
+            // both delete the same range: nothing left to do for either
+            ca.advance(n);
+            cb.advance(n);
+        }
+        return new TextOperation[] { aPrime, bPrime };
+    }
+
+    /**
+     * Combines this operation with one that follows it into a single operation
+     * with the same effect.
+     */
+    public TextOperation compose(TextOperation next) {
+        if (targetLength != next.baseLength) {
+            throw new IllegalArgumentException("composed operation must start where this one ends");
+        }
+        TextOperation composed = new TextOperation();
+        Cursor ca = new Cursor(components);
+        Cursor cb = new Cursor(next.components);
+
+        while (ca.hasNext() || cb.hasNext()) {
+            if (ca.hasNext() && isDelete(ca.peek())) {
+                composed.delete(ca.remaining());
+                ca.advance(ca.remaining());
+                continue;
+            }
+            if (cb.hasNext() && isInsert(cb.peek())) {
+                composed.insert((String) cb.take());
+                continue;
+            }
+            if (!ca.hasNext() || !cb.hasNext()) {
+                throw new IllegalArgumentException("operations do not line up");
+            }
+
+            int n = Math.min(ca.remaining(), cb.remaining());
+            if (isRetain(ca.peek())) {
+                if (isRetain(cb.peek())) composed.retain(n);
+                else composed.delete(n);
+            } else if (isRetain(cb.peek())) {
+                composed.insert(ca.insertedText(n));
+            }
+            // an insert deleted again by next cancels out
+            ca.advance(n);
+            cb.advance(n);
+        }
+        return composed;
+    }
+
+    /** Parses the JSON form: a list of integers and strings. */
+    public static TextOperation fromJson(List<?> json) {
+        if (json == null) throw new IllegalArgumentException("operation is missing");
+        TextOperation op = new TextOperation();
+        for (Object c : json) {
+            if (c instanceof String s) {
+                op.insert(s);
+            } else if (c instanceof Number n && n.intValue() == n.doubleValue() && n.intValue() != 0) {
+                if (n.intValue() > 0) op.retain(n.intValue());
+                else op.delete(-n.intValue());
+            } else {
+                throw new IllegalArgumentException("invalid operation component: " + c);
+            }
+        }
+        return op;
+    }
+
+    public List<Object> toJson() {
+        return Collections.unmodifiableList(components);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TextOperation other && components.equals(other.components);
+    }
+
+    @Override
+    public int hashCode() {
+        return components.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return components.toString();
+    }
+
+    /* ---------- internals ---------- */
+
+    private static boolean isRetain(Object c) {
+        return c instanceof Integer n && n > 0;
+    }
+
+    private static boolean isInsert(Object c) {
+        return c instanceof String;
+    }
+
+    private static boolean isDelete(Object c) {
+        return c instanceof Integer n && n < 0;
+    }
+
+    /** Walks a component list, allowing retains and deletes to be consumed in parts. */
+    private static final class Cursor {
+        private final List<Object> components;
+        private int index;
+        private int offset;
+
+        Cursor(List<Object> components) {
+            this.components = components;
+        }
+
+        boolean hasNext() {
+            return index < components.size();
+        }
+
+        Object peek() {
+            return components.get(index);
+        }
+
+        /** Consumes a whole component. */
+        Object take() {
+            offset = 0;
+            return components.get(index++);
+        }
+
+        /** Length of the current component not yet consumed. */
+        int remaining() {
+            return length(components.get(index)) - offset;
+        }
+
+        String insertedText(int n) {
+            return ((String) components.get(index)).substring(offset, offset + n);
+        }
+
+        void advance(int n) {
+            offset += n;
+            if (offset == length(components.get(index))) {
+                index++;
+                offset = 0;
+            }
+        }
+
+        private static int length(Object c) {
+            return c instanceof String s ? s.length() : Math.abs((Integer) c);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.collabcode.server.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashed timer wheel: keys are dropped into the slot of their deadline tick,
+ * and advancing the wheel hands back the keys of every slot it passes. A slot
+ * holds keys of all rotations, so a returned key may not be due yet; callers
+ * check the real deadline and schedule it again if it was refreshed or lies
+ * further ahead. That keeps a refresh free of any wheel operation.
+ */
+final class TimerWheel<K> {
+
+    private final long tickMillis;
+    private final List<Set<K>> slots;
+    /** Last tick advanced past. */
+    private long current;
+
+    TimerWheel(int slotCount, long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) slots.add(new HashSet<>());
+        this.current = now / tickMillis;
+    }
+
+    synchronized void schedule(K key, long deadline) {
+        long tick = Math.max(current + 1, (deadline + tickMillis - 1) / tickMillis);
+        slots.get((int) (tick % slots.size())).add(key);
+    }
+
+    /** @return Keys of the slots passed since the last call, possibly not due yet. */
+    synchronized List<K> advance(long now) {
+        long target = now / tickMillis;
+        List<K> passed = new ArrayList<>();
+        // one full rotation visits every slot
+        long from = Math.max(current + 1, target - slots.size() + 1);
+        for (long tick = from; tick <= target; tick++) {
+            Set<K> slot = slots.get((int) (tick % slots.size()));
+            passed.addAll(slot);
+            slot.clear();
+        }
+        current = Math.max(current, target);
+        return passed;
+    }
+}
@@ -0,0 +1,142 @@
+package com.collabcode.server.config;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketMessagingAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two server nodes on one machine, relaying /topic to an embedded ActiveMQ:
+ * a broadcast made on one node reaches a client connected to the other.
+ */
+public class BrokerRelayTest {
+
+    private BrokerService broker;
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @Configuration
+    @Import(WebSocketConfig.class)
+    @ImportAutoConfiguration({
+        ServletWebServerFactoryAutoConfiguration.class,
+        DispatcherServletAutoConfiguration.class,
+        WebMvcAutoConfiguration.class,
+        JacksonAutoConfiguration.class,
+        HttpMessageConvertersAutoConfiguration.class,
+        WebSocketServletAutoConfiguration.class,
+        WebSocketMessagingAutoConfiguration.class
+    })
+    static class Node { }
+
+    @BeforeEach
+    public void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.addConnector("stomp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    @AfterEach
+    public void stopAll() throws Exception {
+        nodes.forEach(ConfigurableApplicationContext::close);
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+
+    @Test
+    public void testBroadcastReachesClientOfAnotherNode() throws Exception {
+        ConfigurableApplicationContext nodeA = startNode();
+        ConfigurableApplicationContext nodeB = startNode();
+
+        BlockingQueue<Map<?, ?>> received = new LinkedBlockingQueue<>();
+        StompSession session = connect(nodeA);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        session.setAutoReceipt(true);
+        session.subscribe("/topic/edit/f1", new StompFrameHandler() {
+            @Override public Type getPayloadType(StompHeaders headers) { return Map.class; }
+            @Override public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<?, ?>) payload);
+            }
+        }).addReceiptTask(subscribed::countDown);
+        assertTrue(subscribed.await(10, TimeUnit.SECONDS), "subscription not confirmed by the broker");
+
+        nodeB.getBean(SimpMessagingTemplate.class)
+             .convertAndSend("/topic/edit/f1", Map.of("type", "OPS", "fileId", "f1"));
+
+        Map<?, ?> frame = received.poll(10, TimeUnit.SECONDS);
+        assertNotNull(frame, "broadcast from node B never reached node A's client");
+        assertEquals("OPS", frame.get("type"));
+        session.disconnect();
+    }
+
+    /* ---------- helpers ---------- */
+
+    private ConfigurableApplicationContext startNode() throws Exception {
+        TransportConnector stomp = broker.getTransportConnectors().get(0);
+        // as arguments, so they override application.properties
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(Node.class)
+            .run("--server.port=0",
+                 "--spring.main.banner-mode=off",
+                 "--spring.devtools.restart.enabled=false",
+                 "--collab.broker.mode=relay",
+                 "--collab.broker.host=localhost",
+                 "--collab.broker.port=" + stomp.getConnectUri().getPort());
+        nodes.add(node);
+
+        StompBrokerRelayMessageHandler relay = node.getBean(StompBrokerRelayMessageHandler.class);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!relay.isBrokerAvailable() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertTrue(relay.isBrokerAvailable(), "node did not connect to the broker");
+        return node;
+    }
+
+    private StompSession connect(ConfigurableApplicationContext node) throws Exception {
+        int port = ((ServletWebServerApplicationContext) node).getWebServer().getPort();
+        WebSocketStompClient client = new WebSocketStompClient(
+            new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        client.setMessageConverter(new MappingJackson2MessageConverter());
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        client.setTaskScheduler(scheduler);
+        return client.connectAsync("ws://localhost:" + port + "/ws", new StompSessionHandlerAdapter() { })
+                     .get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,55 @@
+package com.collabcode.server.repository;
+
+import com.collabcode.server.entity.FileMetadata;
+import com.collabcode.server.factory.FileMetadataFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(showSql = false)
+public class FileMetadataRepositoryTest {
+
+    @Autowired
+    private FileMetadataRepository repo;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Test
+    public void testFindByFolderIdAndFilename() {
+        repo.save(FileMetadataFactory.createFileMetadata("main.py", "anonymous", 1L));
+        repo.save(FileMetadataFactory.createFileMetadata("main.py", "anonymous", 2L));
+        repo.save(FileMetadataFactory.createFileMetadata("util.py", "anonymous", 1L));
+
+        FileMetadata found = repo.findByFolderIdAndFilename(1L, "main.py").orElseThrow();
+        assertEquals(1L, found.getFolderId());
+        assertEquals("main.py", found.getFilename());
+        assertTrue(repo.findByFolderIdAndFilename(3L, "main.py").isEmpty());
+        assertEquals(2, repo.findByFolderId(1L).size());
+    }
+
+    @Test
+    public void testDuplicateFilenameInFolderIsRejected() {
+        repo.saveAndFlush(FileMetadataFactory.createFileMetadata("main.c", "anonymous", 1L));
+        assertThrows(DataIntegrityViolationException.class, () ->
+            repo.saveAndFlush(FileMetadataFactory.createFileMetadata("main.c", "anonymous", 1L)));
+    }
+
+    /**
+     * Save resolves its file through findByFolderIdAndFilename, so the lookup
+     * must be served by the (folder_id, filename) index rather than a scan.
+     */
+    @Test
+    public void testLookupUsesTheFolderFilenameIndex() {
+        repo.saveAndFlush(FileMetadataFactory.createFileMetadata("main.py", "anonymous", 1L));
+
+        String plan = String.valueOf(em.getEntityManager().createNativeQuery(
+                "EXPLAIN SELECT * FROM file_metadata WHERE folder_id = 1 AND filename = 'main.py'")
+            .getSingleResult());
+        assertTrue(plan.toLowerCase().contains("uk_file_metadata_folder_filename"), plan);
+    }
+}
@@ -0,0 +1,144 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.entity.FileMetadata;
+import com.collabcode.server.entity.Folder;
+import com.collabcode.server.repository.FileMetadataRepository;
+import com.collabcode.server.repository.FolderRepository;
+import com.collabcode.server.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class AutosaveServiceTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final FileSystemClient fsClient = mock(FileSystemClient.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AutosaveService autosave;
+
+    @BeforeEach
+    public void setUp() {
+        FileMetadata meta = new FileMetadata();
+        meta.setId("f1");
+        meta.setFilename("main.c");
+        meta.setFolderId(3L);
+        Folder folder = new Folder();
+        folder.setProjectId(7L);
+
+        FileMetadataRepository metaRepo = mock(FileMetadataRepository.class);
+        FolderRepository folderRepo = mock(FolderRepository.class);
+        when(metaRepo.findById("f1")).thenReturn(Optional.of(meta));
+        when(folderRepo.findById(3L)).thenReturn(Optional.of(folder));
+
+        autosave = new AutosaveService(metaRepo, folderRepo, mock(UserRepository.class), fsClient,
+            new LatestSnapshotCache(1 << 20, registry), registry, clock, 2_000, 30_000, 1, 4);
+    }
+
+    @Test
+    public void testBurstOfEditsIsSavedOnceAfterIdleWindow() throws Exception {
+        CollaborativeDocument doc = new CollaborativeDocument("f1", "", 100);
+        for (int i = 0; i < 50; i++) {
+            type(doc, "x");
+            clock.advance(100);
+            autosave.tick();
+        }
+        verify(fsClient, never()).saveSnapshot(any(), any(), any(), any(), any());
+
+        clock.advance(2_000);
+        autosave.tick();
+        autosave.shutdown();
+
+        verify(fsClient, times(1)).saveSnapshot(eq("f1"), startsWith("7/f1-main-c/f1_"),
+                                                eq("x".repeat(50)), eq("anonymous"), eq("autosave"));
+        assertEquals(50, registry.get("autosave.ops.per.snapshot").summary().totalAmount());
+    }
+
+    @Test
+    public void testContinuousTypingIsSavedWithinMaxWindow() throws Exception {
+        CollaborativeDocument doc = new CollaborativeDocument("f1", "", 100);
+        for (int i = 0; i < 40; i++) {           // one edit per second for 40s
+            type(doc, "y");
+            clock.advance(1_000);
+            autosave.tick();
+            if (i == 29) {
+                // forced 30s after the first edit, though typing never paused
+                verify(fsClient, timeout(5_000)).saveSnapshot(any(), any(), eq("y".repeat(30)), any(), any());
+            }
+        }
+        autosave.shutdown();
+
+        // the rest is written on shutdown
+        verify(fsClient, times(2)).saveSnapshot(any(), any(), any(), any(), any());
+        verify(fsClient).saveSnapshot(any(), any(), eq("y".repeat(40)), any(), any());
+        assertEquals(0, autosave.dirtyFiles());
+    }
+
+    @Test
+    public void testFailedSaveIsRetried() throws Exception {
+        doThrow(new RuntimeException("down")).doNothing()
+            .when(fsClient).saveSnapshot(any(), any(), any(), any(), any());
+        CollaborativeDocument doc = new CollaborativeDocument("f1", "", 100);
+        type(doc, "z");
+
+        autosave.close("f1");
+        assertEquals(1, autosave.dirtyFiles());
+
+        clock.advance(2_000);
+        autosave.tick();
+        autosave.shutdown();
+        verify(fsClient, times(2)).saveSnapshot(any(), any(), eq("z"), any(), any());
+        assertEquals(0, autosave.dirtyFiles());
+    }
+
+    @Test
+    public void testReopenedDocumentTakesOverUnsavedEdits() throws Exception {
+        doThrow(new RuntimeException("down")).doNothing()
+            .when(fsClient).saveSnapshot(any(), any(), any(), any(), any());
+        CollaborativeDocument closed = new CollaborativeDocument("f1", "", 100);
+        type(closed, "old");
+        autosave.close("f1");
+        assertEquals("old", autosave.unsaved("f1").orElseThrow());
+
+        // reopened from the unsaved content, then edited
+        CollaborativeDocument reopened = new CollaborativeDocument("f1", autosave.unsaved("f1").orElseThrow(), 100);
+        type(reopened, " new");
+
+        clock.advance(2_000);
+        autosave.tick();
+        autosave.shutdown();
+        verify(fsClient).saveSnapshot(any(), any(), eq("old new"), any(), any());
+        assertTrue(autosave.unsaved("f1").isEmpty());
+    }
+
+    /* ---------- helpers ---------- */
+
+    private void type(CollaborativeDocument doc, String text) {
+        int revision = doc.state().revision();
+        int length = doc.state().content().length();
+        doc.apply(revision, new TextOperation().retain(length).insert(text));
+        autosave.edited(doc, null);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(long millis) {
+            now = now.plus(Duration.ofMillis(millis));
+        }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+}
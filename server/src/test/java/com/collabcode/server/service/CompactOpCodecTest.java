@@ -0,0 +1,91 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.FileEditWebSocketController.EditMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactOpCodecTest {
+
+    @Test
+    public void testOpRoundTrip() {
+        EditMessage op = op("u1", "u1-7", 1234, List.of(5, "a\tb\nc:d", -3, 80));
+
+        EditMessage decoded = CompactOpCodec.decodeOp(CompactOpCodec.encodeOp(op));
+
+        assertEquals("OP", decoded.getType());
+        assertEquals("f1", decoded.getFileId());
+        assertEquals("u1", decoded.getUserId());
+        assertEquals("u1-7", decoded.getOpId());
+        assertEquals(1234, decoded.getRevision());
+        assertEquals(op.getOps(), decoded.getOps());
+    }
+
+    @Test
+    public void testBatchRoundTrip() {
+        EditMessage resync = new EditMessage();
+        resync.setType("RESYNC");
+        resync.setUserId("u2");
+        resync.setOpId("u2-1");
+        resync.setText("line one\nline\ttwo");
+        List<Object> edits = List.of(op("u1", "u1-1", 9, List.of("héllo ")), resync, op("u1", "u1-2", 10, List.of(6, -2)));
+
+        List<EditMessage> decoded = CompactOpCodec.decodeBatch(CompactOpCodec.encodeBatch("f1", edits));
+
+        assertEquals(3, decoded.size());
+        assertEquals(List.of("héllo "), decoded.get(0).getOps());
+        assertEquals(9, decoded.get(0).getRevision());
+        assertEquals("RESYNC", decoded.get(1).getType());
+        assertEquals("line one\nline\ttwo", decoded.get(1).getText());
+        assertEquals("u2-1", decoded.get(1).getOpId());
+        assertEquals(List.of(6, -2), decoded.get(2).getOps());
+        assertEquals("f1", decoded.get(2).getFileId());
+    }
+
+    @Test
+    public void testMalformedFramesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CompactOpCodec.decodeOp("EDIT\tf1\tu1\tx\t1\tR1"));
+        assertThrows(IllegalArgumentException.class, () -> CompactOpCodec.decodeOp("OP\tf1\tu1\tx\t\tR1"));
+        assertThrows(IllegalArgumentException.class, () -> CompactOpCodec.decodeOp("OP\tf1\tu1\tx\t1\tX1"));
+        assertThrows(IllegalArgumentException.class, () -> CompactOpCodec.decodeOp("OP\tf1\tu1\tx\t1\tI9:ab"));
+        assertThrows(IllegalArgumentException.class, () -> CompactOpCodec.decodeBatch("OPS\tf1\t2\nOP\tu1\tx\t1\tR1"));
+    }
+
+    /** Wire size of typing traffic: single-character inserts into a 4,000 character file. */
+    @Test
+    public void testCompactFormatIsSmallerThanJson() throws Exception {
+        ObjectMapper json = new ObjectMapper();
+        List<Object> batch = new ArrayList<>();
+        long jsonOpBytes = 0;
+        long compactOpBytes = 0;
+        for (int i = 0; i < 8; i++) {
+            EditMessage op = op("user-42", "user-42-" + i, 500 + i, List.of(1_000 + i, "x", 3_000 - i));
+            batch.add(op);
+            jsonOpBytes += json.writeValueAsBytes(op).length;
+            compactOpBytes += CompactOpCodec.encodeOp(op).getBytes(StandardCharsets.UTF_8).length;
+        }
+        long jsonBatchBytes = json.writeValueAsBytes(new EditFanout.EditBatch("OPS", "f1", batch)).length;
+        long compactBatchBytes = CompactOpCodec.encodeBatch("f1", batch).getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue(compactOpBytes * 2 < jsonOpBytes, compactOpBytes + " vs " + jsonOpBytes + " bytes");
+        assertTrue(compactBatchBytes * 2 < jsonBatchBytes, compactBatchBytes + " vs " + jsonBatchBytes + " bytes");
+    }
+
+    /* ---------- helpers ---------- */
+
+    private static EditMessage op(String userId, String opId, int revision, List<Object> ops) {
+        EditMessage message = new EditMessage();
+        message.setType("OP");
+        message.setFileId("f1");
+        message.setUserId(userId);
+        message.setOpId(opId);
+        message.setRevision(revision);
+        message.setOps(ops);
+        return message;
+    }
+}
@@ -0,0 +1,90 @@
+package com.collabcode.server.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownstreamClientTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/read", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "content".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionsAreReusedAndCallsTimedPerDownstream() throws Exception {
+        DownstreamClient fs = new DownstreamClient(HttpClient.newHttpClient(), registry, "filesystem", Duration.ofSeconds(5));
+        for (int i = 0; i < 20; i++) {
+            HttpResponse<String> response = fs.send(get("/read"), HttpResponse.BodyHandlers.ofString());
+            assertEquals("content", response.body());
+        }
+        assertEquals(404, fs.send(get("/missing"), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertEquals(1, clientPorts.size(), "one kept-alive connection");
+        assertEquals(20, timer("SUCCESS").count());
+        assertEquals(1, timer("CLIENT_ERROR").count());
+    }
+
+    @Test
+    public void testRestTemplateGoesThroughTheSameClient() {
+        DownstreamClient fs = new DownstreamClient(HttpClient.newHttpClient(), registry, "filesystem", Duration.ofSeconds(5));
+        RestTemplate rest = new RestTemplate(fs.requestFactory());
+        rest.setInterceptors(List.of(fs.metrics()));
+
+        for (int i = 0; i < 5; i++) assertEquals("content", rest.getForObject(url + "/read", String.class));
+        assertThrows(HttpClientErrorException.NotFound.class, () -> rest.getForObject(url + "/missing", String.class));
+
+        assertEquals(1, clientPorts.size());
+        assertEquals(5, timer("SUCCESS").count());
+        assertEquals(1, timer("CLIENT_ERROR").count());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder().uri(URI.create(url + path)).GET().build();
+    }
+
+    private Timer timer(String outcome) {
+        return registry.get("downstream.requests").tag("downstream", "filesystem").tag("outcome", outcome).timer();
+    }
+}
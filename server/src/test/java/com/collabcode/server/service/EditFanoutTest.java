@@ -0,0 +1,57 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class EditFanoutTest {
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void testBurstIsSentAsOneFrameInOrder() throws Exception {
+        EditFanout fanout = new EditFanout(template, registry, 20, 200);
+        for (int i = 0; i < 100; i++) fanout.publish("f1", i);
+
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(template, timeout(2_000)).convertAndSend(eq("/topic/ops/f1"), frame.capture());
+        Thread.sleep(300);
+        verifyNoMoreInteractions(template);
+
+        EditFanout.EditBatch batch = (EditFanout.EditBatch) frame.getValue();
+        assertEquals("OPS", batch.type());
+        assertEquals(100, batch.edits().size());
+        for (int i = 0; i < 100; i++) assertEquals(i, batch.edits().get(i));
+        fanout.shutdown();
+    }
+
+    @Test
+    public void testSteadyStreamIsFlushedByDeadline() throws Exception {
+        EditFanout fanout = new EditFanout(template, registry, 10, 30);
+        long start = System.nanoTime();
+        int published = 0;
+        while (System.nanoTime() - start < 150_000_000L) {    // an edit every ms for 150ms
+            fanout.publish("f1", published++);
+            Thread.sleep(1);
+        }
+        Thread.sleep(200);
+
+        ArgumentCaptor<Object> frames = ArgumentCaptor.forClass(Object.class);
+        verify(template, atLeast(3)).convertAndSend(eq("/topic/ops/f1"), frames.capture());
+        List<Object> received = new ArrayList<>();
+        for (Object frame : frames.getAllValues()) received.addAll(((EditFanout.EditBatch) frame).edits());
+        assertEquals(published, received.size());
+        for (int i = 0; i < published; i++) assertEquals(i, received.get(i));
+        assertTrue(frames.getAllValues().size() < published);
+        fanout.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ExecutionJobsTest {
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final CodeExecutionService executions = mock(CodeExecutionService.class);
+    private final ExecutionJobs jobs = new ExecutionJobs(executions, template, new SimpleMeterRegistry(), 1, 1, 0);
+
+    @AfterEach
+    void shutdown() {
+        jobs.shutdown();
+    }
+
+    @Test
+    public void testSubmitReturnsAtOnceAndTheResultIsFetchedAndPushed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(executions.execute("f1", "snap")).thenAnswer(call -> {
+            release.await(2, TimeUnit.SECONDS);
+            return "Hello\n";
+        });
+
+        long start = System.nanoTime();
+        ExecutionJobs.Submitted job = jobs.submit("f1", "snap");
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 500);
+        Thread.sleep(100);
+        assertEquals("RUNNING", jobs.status(job.jobId()).orElseThrow().status());
+
+        release.countDown();
+        assertEquals("Hello\n", job.output().get(2, TimeUnit.SECONDS));
+        ArgumentCaptor<Object> pushed = ArgumentCaptor.forClass(Object.class);
+        verify(template, timeout(2_000)).convertAndSend(eq("/topic/job/" + job.jobId()), pushed.capture());
+        assertEquals(new ExecutionJobs.JobStatus(job.jobId(), "SUCCEEDED", "Hello\n", null), pushed.getValue());
+        assertEquals(pushed.getValue(), jobs.status(job.jobId()).orElseThrow());
+
+        // finished jobs are dropped after their ttl, here 0
+        jobs.expire();
+        assertTrue(jobs.status(job.jobId()).isEmpty());
+    }
+
+    @Test
+    public void testFailuresAndAFullQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(executions.execute(eq("f1"), any())).thenAnswer(call -> {
+            release.await(2, TimeUnit.SECONDS);
+            throw new RuntimeException("File metadata not found");
+        });
+
+        ExecutionJobs.Submitted running = jobs.submit("f1", "a");
+        Thread.sleep(100);
+        ExecutionJobs.Submitted queued = jobs.submit("f1", "b");
+        assertEquals("QUEUED", jobs.status(queued.jobId()).orElseThrow().status());
+        assertThrows(RejectedExecutionException.class, () -> jobs.submit("f1", "c"));
+
+        release.countDown();
+        verify(template, timeout(2_000)).convertAndSend(eq("/topic/job/" + queued.jobId()), any(Object.class));
+        ExecutionJobs.JobStatus failed = jobs.status(running.jobId()).orElseThrow();
+        assertEquals("FAILED", failed.status());
+        assertEquals("File metadata not found", failed.error());
+    }
+}
@@ -0,0 +1,146 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ExecutionRelayTest {
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final CodeExecutionService executions = mock(CodeExecutionService.class);
+    private final ExecutionRelay relay = new ExecutionRelay(template, executions, new SimpleMeterRegistry(), 1, 1, 64, 20, 1_000, 500);
+
+    @AfterEach
+    void shutdown() {
+        relay.shutdown();
+    }
+
+    @Test
+    public void testOutputIsCoalescedIntoOrderedFramesThenExit() throws Exception {
+        when(executions.stream(eq("f1"), eq("snap"), any())).thenAnswer(call -> {
+            Consumer<String> output = call.getArgument(2);
+            for (int i = 0; i < 100; i++) output.accept(i + "\n");
+            Thread.sleep(100);
+            output.accept("late\n");
+            return 3;
+        });
+
+        relay.start("run-0001", "s1", "f1", "snap");
+
+        ArgumentCaptor<Object> frames = ArgumentCaptor.forClass(Object.class);
+        verify(template, timeout(2_000)).convertAndSend(eq("/topic/run/run-0001"), isA(ExecutionRelay.RunExit.class));
+        verify(template, atLeastOnce()).convertAndSend(eq("/topic/run/run-0001"), frames.capture());
+
+        List<Object> sent = frames.getAllValues();
+        StringBuilder text = new StringBuilder();
+        for (Object frame : sent.subList(0, sent.size() - 1)) {
+            String chunk = ((ExecutionRelay.RunOutput) frame).text();
+            assertTrue(chunk.length() < 64 + 4, chunk);
+            text.append(chunk);
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) expected.append(i).append('\n');
+        assertEquals(expected + "late\n", text.toString());
+        assertTrue(sent.size() < 50, sent.size() + " frames");
+        // the late line went out alone, before the exit
+        assertEquals("late\n", ((ExecutionRelay.RunOutput) sent.get(sent.size() - 2)).text());
+        assertEquals(3, ((ExecutionRelay.RunExit) sent.get(sent.size() - 1)).exitCode());
+    }
+
+    @Test
+    public void testRunsBeyondTheQueueAreRefused() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(executions.stream(any(), any(), any())).thenAnswer(call -> {
+            release.await(2, TimeUnit.SECONDS);
+            return 0;
+        });
+
+        relay.start("run-0001", "s1", "f1", "snap");     // running
+        Thread.sleep(100);
+        relay.start("run-0002", "s2", "f1", "snap");     // queued
+        relay.start("run-0003", "s3", "f1", "snap");     // refused
+        relay.start("run-0004", "s1", "f1", "snap");     // one run per session
+
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(template).convertAndSend(eq("/topic/run/run-0003"), frame.capture());
+        assertEquals("ERROR", ((ExecutionRelay.RunError) frame.getValue()).type());
+        verify(template).convertAndSend(eq("/topic/run/run-0004"), isA(ExecutionRelay.RunError.class));
+        release.countDown();
+        verify(template, timeout(2_000)).convertAndSend(eq("/topic/run/run-0002"), isA(ExecutionRelay.RunExit.class));
+        assertThrows(IllegalArgumentException.class, () -> relay.start("../edit/f1", "s4", "f1", "snap"));
+    }
+
+    @Test
+    public void testOutputWaitsForCreditsAndStopsWithoutThem() throws Exception {
+        ExecutionRelay windowed = new ExecutionRelay(template, executions, new SimpleMeterRegistry(), 1, 1, 4, 20, 2, 500);
+        when(executions.stream(eq("f1"), eq("snap"), any())).thenAnswer(call -> {
+            Consumer<String> output = call.getArgument(2);
+            for (int i = 0; i < 10; i++) output.accept("abcd");
+            return 0;
+        });
+        try {
+            windowed.start("run-0001", "s1", "f1", "snap");
+            verify(template, timeout(1_000).times(2)).convertAndSend(eq("/topic/run/run-0001"), isA(ExecutionRelay.RunOutput.class));
+            Thread.sleep(100);
+            verify(template, times(2)).convertAndSend(eq("/topic/run/run-0001"), isA(ExecutionRelay.RunOutput.class));
+
+            windowed.credit("run-0001", "s2", 2);
+            Thread.sleep(100);
+            verify(template, times(2)).convertAndSend(eq("/topic/run/run-0001"), isA(ExecutionRelay.RunOutput.class));
+
+            windowed.credit("run-0001", "s1", 2);
+            verify(template, timeout(1_000).times(4)).convertAndSend(eq("/topic/run/run-0001"), isA(ExecutionRelay.RunOutput.class));
+
+            // no more credit: the run is stopped
+            ArgumentCaptor<ExecutionRelay.RunError> error = ArgumentCaptor.forClass(ExecutionRelay.RunError.class);
+            verify(template, timeout(2_000)).convertAndSend(eq("/topic/run/run-0001"), error.capture());
+            assertTrue(error.getValue().message().contains("stopped reading"), error.getValue().message());
+        } finally {
+            windowed.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecutorEventsAreRead() throws Exception {
+        String events = """
+                event:output
+                data:{"text":"a\\nb\\n"}
+
+                event:output
+                data:{"text":"caf\\u00e9"}
+
+                event:exit
+                data:{"exitCode":2}
+
+                """;
+        List<String> output = new ArrayList<>();
+        int exitCode = ExecutorRouterService.readEvents(new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8)), output::add);
+
+        assertEquals(2, exitCode);
+        assertEquals(List.of("a\nb\n", "café"), output);
+    }
+
+    @Test
+    public void testExecutorErrorsAreNotOutput() throws Exception {
+        ExecutorRouterService.checkStatus(200, "Hello\n");
+        assertThrows(RejectedExecutionException.class, () -> ExecutorRouterService.checkStatus(429, "queue full"));
+        IOException failed = assertThrows(IOException.class, () -> ExecutorRouterService.checkStatus(500, "boom"));
+        assertEquals("Executor returned 500: boom", failed.getMessage());
+    }
+}
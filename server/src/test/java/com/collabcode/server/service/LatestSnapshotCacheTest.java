@@ -0,0 +1,45 @@
+package com.collabcode.server.service;
+
+import com.collabcode.server.controller.CodeController.LatestResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatestSnapshotCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByBytes() {
+        // each entry weighs 128 + 2 * (10 + 1000) = 2148 bytes, so 22 fit
+        LatestSnapshotCache cache = new LatestSnapshotCache(48_000, registry);
+        String body = "x".repeat(1_000);
+        cache.put(1L, "a", new LatestResponse("1/a/a_1.py", body));
+        cache.put(1L, "b", new LatestResponse("1/b/b_1.py", body));
+        assertNotNull(cache.get(1L, "a"));
+
+        for (int i = 0; i < 21; i++) {
+            cache.put(2L, "f" + i, new LatestResponse("2/f/f_1.py", body));
+        }
+
+        assertEquals(22, cache.size());
+        assertTrue(cache.usedBytes() <= 48_000);
+        assertNull(cache.get(1L, "b"));
+        assertNotNull(cache.get(1L, "a"));
+        assertEquals(1.0, registry.get("cache.latest.evictions").counter().count());
+        assertEquals(1.0, registry.get("cache.latest.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    public void testOlderSnapshotDoesNotReplaceNewer() {
+        LatestSnapshotCache cache = new LatestSnapshotCache(1_000_000, registry);
+        cache.put(1L, "a", new LatestResponse("1/a/a_20250101_120000.py", "new"));
+        cache.put(1L, "a", new LatestResponse("1/a/a_20250101_110000.py", "old"));
+        assertEquals("new", cache.get(1L, "a").getContent());
+
+        cache.invalidateProject(1L);
+        assertNull(cache.get(1L, "a"));
+        assertEquals(0, cache.usedBytes());
+    }
+}
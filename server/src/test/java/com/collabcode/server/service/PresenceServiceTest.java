@@ -0,0 +1,122 @@
+package com.collabcode.server.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class PresenceServiceTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final CollaborationService collaboration = mock(CollaborationService.class);
+    private final AutosaveService autosave = mock(AutosaveService.class);
+    private final PresenceService presence = new PresenceService(
+        template, collaboration, autosave, new SimpleMeterRegistry(), clock, 45_000, 1_000, 16);
+
+    @Test
+    public void testDiffsAreSentPerUserNotPerSession() {
+        presence.join("s1", "alice", "f1");
+        presence.join("s2", "alice", "f1");    // second tab
+        presence.join("s3", "bob", "f1");
+        presence.leave("s1", "f1");
+        presence.leave("s3", "f1");
+
+        ArgumentCaptor<Object> diffs = ArgumentCaptor.forClass(Object.class);
+        verify(template, times(3)).convertAndSend(eq("/topic/edit/f1"), diffs.capture());
+        assertEquals(List.of(
+            new PresenceService.PresenceDiff("PRESENCE", "f1", List.of("alice"), List.of(), 1),
+            new PresenceService.PresenceDiff("PRESENCE", "f1", List.of("bob"), List.of(), 2),
+            new PresenceService.PresenceDiff("PRESENCE", "f1", List.of(), List.of("bob"), 1)
+        ), diffs.getAllValues());
+        assertEquals(new PresenceService.FilePresence("f1", 1, Set.of("alice")), presence.presence("f1"));
+        verify(collaboration, never()).close(any());
+    }
+
+    @Test
+    public void testLastEditorLeavingSavesAndClosesTheFile() {
+        presence.join("s1", "alice", "f1");
+        presence.join("s1", "alice", "f2");
+        presence.leave("s1", "f1");
+
+        verify(autosave).close("f1");
+        verify(collaboration).close("f1");
+        assertEquals(Map.of("f1", 0, "f2", 1), presence.counts(List.of("f1", "f2")));
+    }
+
+    @Test
+    public void testQuietSessionsExpireAndHeartbeatsKeepThemAlive() {
+        presence.join("quiet", "alice", "f1");
+        presence.join("beating", "bob", "f1");
+
+        for (int s = 0; s < 120; s++) {          // two minutes, bob beats every 15s
+            clock.advance(1_000);
+            if (s % 15 == 0) presence.touch("beating");
+            presence.tick();
+        }
+
+        assertEquals(new PresenceService.FilePresence("f1", 1, Set.of("bob")), presence.presence("f1"));
+        verify(collaboration, never()).close(any());
+
+        clock.advance(60_000);
+        presence.tick();
+        assertEquals(0, presence.presence("f1").count());
+        verify(collaboration).close("f1");
+    }
+
+    @Test
+    public void testExpiredSessionRejoinsOnItsNextEdit() {
+        presence.join("s1", "alice", "f1");
+        clock.advance(60_000);
+        presence.tick();
+        assertFalse(presence.editing("s1", "f1"));
+        verify(collaboration).close("f1");
+
+        // still connected, the session edits again and is back on the file
+        assertTrue(presence.join("s1", "alice", "f1"));
+        assertTrue(presence.editing("s1", "f1"));
+        presence.leave("s1", "f1");
+        verify(collaboration, times(2)).close("f1");
+    }
+
+    @Test
+    public void testFileRejoinedDuringItsSaveStaysOpen() {
+        doAnswer(invocation -> {
+            presence.join("s2", "bob", "f1");
+            return null;
+        }).when(autosave).close("f1");
+        presence.join("s1", "alice", "f1");
+        presence.leave("s1", "f1");
+
+        verify(autosave).close("f1");
+        verify(collaboration, never()).close(any());
+        assertEquals(new PresenceService.FilePresence("f1", 1, Set.of("bob")), presence.presence("f1"));
+    }
+
+    /* ---------- helpers ---------- */
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(long millis) {
+            now = now.plus(Duration.ofMillis(millis));
+        }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { return this; }
+        @Override public Instant instant() { return now; }
+    }
+}
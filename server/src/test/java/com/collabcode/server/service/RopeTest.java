@@ -0,0 +1,63 @@
+package com.collabcode.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RopeTest {
+
+    private final Random random = new Random(11);
+
+    @Test
+    public void testEditsMatchStringBuilder() {
+        StringBuilder expected = new StringBuilder(randomText(3_000));
+        Rope rope = Rope.of(expected.toString());
+
+        for (int i = 0; i < 5_000; i++) {
+            int at = random.nextInt(expected.length() + 1);
+            if (expected.length() > 0 && random.nextInt(3) == 0) {
+                int to = Math.min(expected.length(), at + 1 + random.nextInt(40));
+                expected.delete(at, to);
+                rope = rope.delete(at, to);
+            } else {
+                String text = randomText(1 + random.nextInt(random.nextInt(50) == 0 ? 2_000 : 8));
+                expected.insert(at, text);
+                rope = rope.insert(at, text);
+            }
+            assertEquals(expected.length(), rope.length());
+        }
+
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(expected.substring(100, 900), rope.substring(100, 900));
+    }
+
+    @Test
+    public void testTypingAtOneSpotKeepsTreeShallow() {
+        Rope rope = Rope.of(randomText(100_000));
+        for (int i = 0; i < 20_000; i++) {
+            rope = rope.insert(50_000 + i, "x");
+        }
+
+        assertEquals(120_000, rope.length());
+        assertTrue(rope.depth() < 40, "depth " + rope.depth());
+    }
+
+    @Test
+    public void testOperationsApplyToRopeLikeString() {
+        TextOperation op = new TextOperation().retain(6).delete(5).insert("there").retain(1);
+
+        assertEquals("hello there!", op.apply(Rope.of("hello world!")).toString());
+        assertThrows(IllegalArgumentException.class, () -> op.apply(Rope.of("too short")));
+        assertThrows(IndexOutOfBoundsException.class, () -> Rope.of("abc").delete(2, 5));
+    }
+
+    /* ---------- helpers ---------- */
+
+    private String randomText(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(26)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.collabcode.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextOperationTest {
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testApplyAndJsonRoundTrip() {
+        TextOperation op = new TextOperation().retain(6).delete(5).insert("there").retain(1);
+        assertEquals("hello there!", op.apply("hello world!"));
+        assertEquals(List.of(6, "there", -5, 1), op.toJson());
+        assertEquals(op, TextOperation.fromJson(List.of(6, "there", -5, 1)));
+        assertThrows(IllegalArgumentException.class, () -> op.apply("too short"));
+        assertThrows(IllegalArgumentException.class, () -> TextOperation.fromJson(List.of(1.5)));
+    }
+
+    @Test
+    public void testConcurrentInsertsAtSamePositionConverge() {
+        TextOperation a = new TextOperation().retain(3).insert("A");
+        TextOperation b = new TextOperation().retain(3).insert("B");
+        TextOperation[] primes = TextOperation.transform(a, b);
+
+        assertEquals("abcAB", primes[1].apply(a.apply("abc")));
+        assertEquals("abcAB", primes[0].apply(b.apply("abc")));
+    }
+
+    @Test
+    public void testTransformConvergesOnRandomEdits() {
+        for (int i = 0; i < 2_000; i++) {
+            String doc = randomText(random.nextInt(40));
+            TextOperation a = randomOperation(doc);
+            TextOperation b = randomOperation(doc);
+            TextOperation[] primes = TextOperation.transform(a, b);
+
+            assertEquals(primes[1].apply(a.apply(doc)), primes[0].apply(b.apply(doc)),
+                         "diverged on " + doc + " with " + a + " and " + b);
+        }
+    }
+
+    @Test
+    public void testComposeMatchesSequentialApply() {
+        for (int i = 0; i < 2_000; i++) {
+            String doc = randomText(random.nextInt(40));
+            TextOperation a = randomOperation(doc);
+            TextOperation b = randomOperation(a.apply(doc));
+
+            assertEquals(b.apply(a.apply(doc)), a.compose(b).apply(doc));
+        }
+    }
+
+    @Test
+    public void testDocumentTransformsOpsFromStaleRevisions() {
+        CollaborativeDocument doc = new CollaborativeDocument("f", "abc", 50);
+
+        doc.apply(0, new TextOperation().retain(3).insert("!"));            // abc!
+        doc.apply(0, new TextOperation().insert("X").retain(3));            // made on "abc"
+        CollaborativeDocument.Applied applied =
+            doc.apply(1, new TextOperation().retain(1).delete(1).retain(2)); // made on "abc!"
+
+        assertEquals(3, applied.revision());
+        assertEquals(new TextOperation().retain(2).delete(1).retain(2), applied.operation());
+        assertEquals(new CollaborativeDocument.State("Xac!", 3), doc.state());
+    }
+
+    @Test
+    public void testDocumentRejectsRevisionsOutsideTheHistory() {
+        CollaborativeDocument doc = new CollaborativeDocument("f", "", 50);
+        for (int r = 0; r < 60; r++) {
+            doc.apply(r, new TextOperation().retain(r).insert("x"));
+        }
+
+        assertThrows(IllegalStateException.class, () -> doc.apply(61, new TextOperation().retain(60)));
+        assertThrows(IllegalStateException.class, () -> doc.apply(9, new TextOperation().retain(9)));
+        assertEquals(61, doc.apply(10, new TextOperation().retain(10).insert("y")).revision());
+    }
+
+    /* ---------- helpers ---------- */
+
+    private String randomText(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(26)));
+        return sb.toString();
+    }
+
+    private TextOperation randomOperation(String doc) {
+        TextOperation op = new TextOperation();
+        int pos = 0;
+        while (pos < doc.length()) {
+            int n = 1 + random.nextInt(Math.min(5, doc.length() - pos));
+            switch (random.nextInt(4)) {
+                case 0 -> op.delete(n);
+                case 1 -> op.insert(randomText(1 + random.nextInt(4)));
+                default -> op.retain(n);
+            }
+            if (op.getBaseLength() > pos) pos = op.getBaseLength();
+        }
+        if (random.nextBoolean()) op.insert(randomText(1 + random.nextInt(4)));
+        return op;
+    }
+}